@@ -65,7 +65,10 @@ public class ConnectionConfig extends PluginConfig {
   @Description("A list of arbitrary string tag/value pairs as connection arguments. This is a semicolon-separated " +
     "list of key-value pairs, where each pair is separated by a equals '=' and specifies the key and value for the " +
     "argument. For example, 'key1=value1;key2=value' specifies that the connection will be given arguments 'key1' " +
-    "mapped to 'value1' and the argument 'key2' mapped to 'value2'.")
+    "mapped to 'value1' and the argument 'key2' mapped to 'value2'. The arguments 'connectionPool.maxSize' and " +
+    "'connectionPool.borrowTimeoutSeconds' are not passed to the driver, and set the maximum number of pooled " +
+    "connections to the database, 32 by default, and how long to wait for a connection once that many are in use, " +
+    "300 seconds by default.")
   @Nullable
   @Macro
   public String connectionArguments;
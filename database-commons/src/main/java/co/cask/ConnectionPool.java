@@ -0,0 +1,596 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+
+/**
+ * Pool of JDBC connections that is shared by the Database source, sink and actions running in the same JVM, so that
+ * tasks and stages that connect to the same database re-use connections instead of connecting again. Connections are
+ * pooled by JDBC driver class, connection string and connection arguments, including the user and password, and are
+ * opened with the {@link DriverConnectionFactory}.
+ * <p>
+ * The connections returned by {@link #getConnection(Class, String, Properties)} are returned to the pool when they are
+ * closed. Before that, their transaction is rolled back, and their auto-commit mode and transaction isolation level
+ * are reset to the values the connection was opened with. A pooled connection is validated when it is borrowed, and
+ * is closed once it has been idle for longer than the idle timeout. At most {@link #DEFAULT_MAX_SIZE} connections are
+ * open for each database and user, and borrowing a connection waits for another one to be returned beyond that, for
+ * at most {@link #DEFAULT_BORROW_TIMEOUT_MILLIS}. Both can be set with the {@link #MAX_SIZE} and
+ * {@link #BORROW_TIMEOUT_SECONDS} connection arguments, which are not passed to the driver. Callers that need several
+ * connections at once borrow them together with {@link #getConnections(Class, String, Properties, int)}, so that
+ * callers waiting for each other's connections can not deadlock.
+ * <p>
+ * Pools live as long as the JVM, so that the tasks that an executor runs one after another re-use connections, and
+ * are only released by idle eviction: a pool is dropped once all of its connections have been closed, and the thread
+ * that closes idle connections only runs while there are pools. The pools of a driver class are attached to the class
+ * itself and the driver classes are only referenced weakly, so the pools never keep the class loader of a JDBC plugin
+ * from being collected. The driver side of a pipeline, which does not run tasks, releases its connections with
+ * {@link #close(Class)} when the run finishes.
+ */
+public final class ConnectionPool {
+  private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+  public static final String MAX_SIZE = "connectionPool.maxSize";
+  public static final String BORROW_TIMEOUT_SECONDS = "connectionPool.borrowTimeoutSeconds";
+  public static final int DEFAULT_MAX_SIZE = 32;
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+  private static final String POOL_PROPERTY_PREFIX = "connectionPool.";
+  private static final ConnectionPool INSTANCE = new ConnectionPool(DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                                                                    DEFAULT_BORROW_TIMEOUT_MILLIS);
+
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+  private final long borrowTimeoutMillis;
+  // the pools of each driver class, stored with the class so that they do not keep it from being collected
+  private final ClassValue<ConcurrentMap<Key, Pool>> pools;
+  // the driver classes that have pools, to find the pools to evict
+  private final Set<Class<?>> driverClasses;
+  // closes idle connections while there are pools, guarded by this
+  private ScheduledExecutorService evictor;
+
+  ConnectionPool(int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.pools = new ClassValue<ConcurrentMap<Key, Pool>>() {
+      @Override
+      protected ConcurrentMap<Key, Pool> computeValue(Class<?> driverClass) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+    this.driverClasses = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+  }
+
+  /**
+   * @return the connection pool shared by the whole JVM
+   */
+  public static ConnectionPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Borrows a connection to the given database from the pool, or opens a new connection if there is no idle
+   * connection. The connection is returned to the pool when it is closed.
+   *
+   * @param driverClass the JDBC driver class to connect with
+   * @param url the connection string of the database
+   * @param properties the connection arguments, including the user and password
+   * @return a connection to the database
+   * @throws SQLException if a connection could not be opened, or if no connection was returned to a full pool in time
+   */
+  public Connection getConnection(Class<? extends Driver> driverClass, String url,
+                                  Properties properties) throws SQLException {
+    return getConnections(driverClass, url, properties, 1).get(0);
+  }
+
+  /**
+   * Borrows several connections to the given database at once. The connections are reserved together, so a caller
+   * never holds some of them while waiting for the others.
+   *
+   * @param driverClass the JDBC driver class to connect with
+   * @param url the connection string of the database
+   * @param properties the connection arguments, including the user and password
+   * @param count the number of connections
+   * @return the connections to the database
+   * @throws SQLException if the connections could not be opened, if the pool can not have that many connections, or
+   *                      if not enough connections were returned to the pool in time
+   */
+  public List<Connection> getConnections(Class<? extends Driver> driverClass, String url, Properties properties,
+                                         int count) throws SQLException {
+    Key key = new Key(driverClass, url, properties);
+    driverClasses.add(driverClass);
+    // the borrower is registered atomically with the lookup, so that the pool is not dropped before it borrows
+    Pool pool = pools.get(driverClass).compute(key, (k, existing) -> (existing == null ? new Pool(k) : existing)
+      .addBorrower());
+    startEvictor();
+    return pool.borrow(count);
+  }
+
+  /**
+   * Returns the maximum number of connections to a database with the given connection arguments.
+   *
+   * @throws IllegalArgumentException if the {@link #MAX_SIZE} argument is not a positive number
+   */
+  public static int getMaxSize(Properties properties) {
+    return getMaxSize(properties, DEFAULT_MAX_SIZE);
+  }
+
+  private static int getMaxSize(Properties properties, int defaultMaxSize) {
+    String maxSize = properties.getProperty(MAX_SIZE);
+    return maxSize == null ? defaultMaxSize : (int) Math.min(Integer.MAX_VALUE, parsePositive(MAX_SIZE, maxSize));
+  }
+
+  private static long getBorrowTimeoutMillis(Properties properties, long defaultBorrowTimeoutMillis) {
+    String borrowTimeout = properties.getProperty(BORROW_TIMEOUT_SECONDS);
+    return borrowTimeout == null
+      ? defaultBorrowTimeoutMillis : TimeUnit.SECONDS.toMillis(parsePositive(BORROW_TIMEOUT_SECONDS, borrowTimeout));
+  }
+
+  private static long parsePositive(String argument, String value) {
+    try {
+      long parsed = Long.parseLong(value.trim());
+      if (parsed >= 1) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to the error below
+    }
+    throw new IllegalArgumentException(
+      String.format("Invalid value '%s' for connection argument %s. Must be a number of at least 1.", value, argument));
+  }
+
+  /**
+   * Closes the idle connections of the pools of the given driver class, and drops those pools. Connections of the
+   * pools that are borrowed are closed when they are returned.
+   *
+   * @param driverClass the JDBC driver class of the pools to close
+   */
+  public void close(Class<? extends Driver> driverClass) {
+    ConcurrentMap<Key, Pool> driverPools = pools.get(driverClass);
+    for (Key key : driverPools.keySet()) {
+      Pool pool = driverPools.remove(key);
+      if (pool != null) {
+        pool.close();
+      }
+    }
+    stopEvictorIfUnused();
+  }
+
+  /**
+   * Closes the connections that have been idle for longer than the idle timeout. Pools are dropped once their last
+   * connection has been closed.
+   */
+  void evictIdle() {
+    long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+    for (Class<?> driverClass : getDriverClasses()) {
+      for (Pool pool : pools.get(driverClass).values()) {
+        pool.evictIdle(idleSince);
+      }
+    }
+  }
+
+  // drops the pool if it has no connections left
+  private void dropPoolIfUnused(Pool pool) {
+    pools.get(pool.key.driverClass).computeIfPresent(
+      pool.key, (k, existing) -> existing == pool && pool.dropIfUnused() ? null : existing);
+    stopEvictorIfUnused();
+  }
+
+  /**
+   * @return the number of pools, which is the number of distinct databases and users with open connections
+   */
+  int size() {
+    int size = 0;
+    for (Class<?> driverClass : getDriverClasses()) {
+      size += pools.get(driverClass).size();
+    }
+    return size;
+  }
+
+  private List<Class<?>> getDriverClasses() {
+    synchronized (driverClasses) {
+      return new ArrayList<>(driverClasses);
+    }
+  }
+
+  private synchronized void startEvictor() {
+    if (evictor != null) {
+      return;
+    }
+    evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "db-connection-pool-evictor");
+      thread.setDaemon(true);
+      // the thread would otherwise keep the context class loader of the plugin that started it
+      thread.setContextClassLoader(ConnectionPool.class.getClassLoader());
+      return thread;
+    });
+    evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+  }
+
+  private synchronized void stopEvictorIfUnused() {
+    if (evictor != null && size() == 0) {
+      evictor.shutdown();
+      evictor = null;
+    }
+  }
+
+  /**
+   * Driver class, connection string and connection arguments of the connections of a pool.
+   */
+  private static final class Key {
+    private final Class<? extends Driver> driverClass;
+    private final String url;
+    private final Map<Object, Object> properties;
+
+    private Key(Class<? extends Driver> driverClass, String url, Properties properties) {
+      this.driverClass = driverClass;
+      this.url = url;
+      this.properties = new HashMap<>(properties);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key that = (Key) o;
+      return driverClass.equals(that.driverClass) && url.equals(that.url) && properties.equals(that.properties);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(driverClass, url, properties);
+    }
+  }
+
+  /**
+   * Connections to one database with the same connection arguments.
+   */
+  private final class Pool {
+    private final Key key;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    // the connection arguments passed to the driver
+    private final Properties driverProperties;
+    // the most recently returned connection is borrowed first, since it is the least likely to have timed out
+    private final Deque<PooledConnection> idle;
+    // number of idle and borrowed connections
+    private int open;
+    // number of callers that looked up the pool and are borrowing a connection
+    private int borrowers;
+    // whether the pool was dropped, in which case its connections are closed when they are returned
+    private boolean closed;
+
+    private Pool(Key key) {
+      this.key = key;
+      this.idle = new ArrayDeque<>();
+      this.driverProperties = new Properties();
+      Properties properties = new Properties();
+      for (Map.Entry<Object, Object> entry : key.properties.entrySet()) {
+        properties.put(entry.getKey(), entry.getValue());
+        if (!String.valueOf(entry.getKey()).startsWith(POOL_PROPERTY_PREFIX)) {
+          driverProperties.put(entry.getKey(), entry.getValue());
+        }
+      }
+      this.maxSize = getMaxSize(properties, ConnectionPool.this.maxSize);
+      this.borrowTimeoutMillis = getBorrowTimeoutMillis(properties, ConnectionPool.this.borrowTimeoutMillis);
+    }
+
+    synchronized Pool addBorrower() {
+      borrowers++;
+      return this;
+    }
+
+    // marks the pool as closed if it has no connections and no borrowers
+    synchronized boolean dropIfUnused() {
+      closed = open == 0 && borrowers == 0;
+      return closed;
+    }
+
+    List<Connection> borrow(int count) throws SQLException {
+      List<Connection> borrowed = new ArrayList<>(count);
+      try {
+        // idle connections, and null for every slot reserved for a new connection
+        List<PooledConnection> reserved = reserve(count, System.currentTimeMillis() + borrowTimeoutMillis);
+        for (int i = 0; i < reserved.size(); i++) {
+          try {
+            borrowed.add(borrow(reserved.get(i)));
+          } catch (SQLException | RuntimeException e) {
+            // give back the reservations that were not used, and the connections that were borrowed
+            for (PooledConnection pooled : reserved.subList(i + 1, reserved.size())) {
+              unreserve(pooled);
+            }
+            for (Connection connection : borrowed) {
+              connection.close();
+            }
+            throw e;
+          }
+        }
+        return borrowed;
+      } finally {
+        synchronized (this) {
+          borrowers--;
+        }
+        // the pool is empty if no connection could be opened
+        dropPoolIfUnused(this);
+      }
+    }
+
+    // borrows a reserved idle connection, or opens a new connection if it is invalid or none was reserved
+    private Connection borrow(@Nullable PooledConnection pooled) throws SQLException {
+      if (pooled == null) {
+        return open();
+      }
+      if (pooled.isValid()) {
+        return pooled.borrow();
+      }
+      LOG.debug("Closing invalid connection to {}", key.url);
+      // the new connection takes the slot of the invalid one
+      pooled.closeQuietly();
+      return open();
+    }
+
+    /**
+     * Reserves the given number of connections, waiting until there are enough of them. Returns the reserved idle
+     * connections, and null for every slot reserved for a new connection.
+     */
+    private synchronized List<PooledConnection> reserve(int count, long deadline) throws SQLException {
+      if (count > maxSize) {
+        throw new SQLException(String.format("Unable to borrow %d connections to %s from a pool of at most %d " +
+                                               "connections. The size of the pool can be set with the connection " +
+                                               "argument '%s'.", count, key.url, maxSize, MAX_SIZE));
+      }
+      while (idle.size() + maxSize - open < count) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new SQLException(String.format("Timed out waiting for %d of the %d connections to %s to be " +
+                                                 "returned to the pool.", count, maxSize, key.url));
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while waiting for a connection to " + key.url, e);
+        }
+      }
+      List<PooledConnection> reserved = new ArrayList<>(count);
+      while (reserved.size() < count) {
+        PooledConnection pooled = idle.pollFirst();
+        if (pooled == null) {
+          open++;
+        }
+        reserved.add(pooled);
+      }
+      return reserved;
+    }
+
+    private void unreserve(@Nullable PooledConnection pooled) {
+      if (pooled != null) {
+        release(pooled);
+        return;
+      }
+      synchronized (this) {
+        open--;
+        notifyAll();
+      }
+    }
+
+    private Connection open() throws SQLException {
+      try {
+        PooledConnection pooled =
+          new PooledConnection(this, DriverConnectionFactory.connect(key.driverClass, key.url, driverProperties));
+        LOG.debug("Opened connection {} of the pool to {}", open, key.url);
+        return pooled.borrow();
+      } catch (SQLException | RuntimeException e) {
+        synchronized (this) {
+          open--;
+          notifyAll();
+        }
+        throw e;
+      }
+    }
+
+    void release(PooledConnection pooled) {
+      if (!pooled.reset()) {
+        discard(pooled);
+        return;
+      }
+      synchronized (this) {
+        if (!closed) {
+          pooled.lastUsed = System.currentTimeMillis();
+          idle.addFirst(pooled);
+          notifyAll();
+          return;
+        }
+      }
+      discard(pooled);
+    }
+
+    void close() {
+      List<PooledConnection> evicted;
+      synchronized (this) {
+        closed = true;
+        evicted = new ArrayList<>(idle);
+        idle.clear();
+      }
+      for (PooledConnection pooled : evicted) {
+        discard(pooled);
+      }
+    }
+
+    void evictIdle(long idleSince) {
+      List<PooledConnection> evicted = new ArrayList<>();
+      synchronized (this) {
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+          PooledConnection pooled = iterator.next();
+          if (pooled.lastUsed >= idleSince) {
+            break;
+          }
+          iterator.remove();
+          evicted.add(pooled);
+        }
+      }
+      for (PooledConnection pooled : evicted) {
+        LOG.debug("Closing idle connection to {}", key.url);
+        discard(pooled);
+      }
+    }
+
+    private void discard(PooledConnection pooled) {
+      pooled.closeQuietly();
+      synchronized (this) {
+        open--;
+        notifyAll();
+      }
+      dropPoolIfUnused(this);
+    }
+  }
+
+  /**
+   * A connection of a pool, with the auto-commit mode and transaction isolation level it was opened with.
+   */
+  private static final class PooledConnection {
+    private final Pool pool;
+    private final Connection connection;
+    private final boolean autoCommit;
+    private final int isolationLevel;
+    private long lastUsed;
+
+    private PooledConnection(Pool pool, Connection connection) throws SQLException {
+      this.pool = pool;
+      this.connection = connection;
+      try {
+        this.autoCommit = connection.getAutoCommit();
+        this.isolationLevel = connection.getTransactionIsolation();
+      } catch (SQLException | RuntimeException e) {
+        connection.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Returns a handle to the connection that returns it to the pool when it is closed. Every borrower gets its own
+     * handle, so that closing a handle again does not return a connection that was borrowed by someone else.
+     */
+    Connection borrow() {
+      AtomicBoolean closed = new AtomicBoolean();
+      return (Connection) Proxy.newProxyInstance(
+        ConnectionPool.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "close":
+              if (closed.compareAndSet(false, true)) {
+                pool.release(this);
+              }
+              return null;
+            case "isClosed":
+              return closed.get() || connection.isClosed();
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "toString":
+              return "Pooled " + connection;
+            default:
+              if (closed.get()) {
+                throw new SQLException("The connection has been returned to the pool.");
+              }
+              try {
+                return method.invoke(connection, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+          }
+        });
+    }
+
+    void closeQuietly() {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOG.debug("Failed to close connection {}", connection, e);
+      }
+    }
+
+    boolean isValid() {
+      try {
+        return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      } catch (SQLException | AbstractMethodError e) {
+        // drivers that do not implement validation
+        try {
+          return !connection.isClosed();
+        } catch (SQLException e1) {
+          return false;
+        }
+      }
+    }
+
+    // prepares the connection for the next borrower, returns false if the connection cannot be re-used
+    boolean reset() {
+      try {
+        if (connection.isClosed()) {
+          return false;
+        }
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+        }
+        if (connection.getAutoCommit() != autoCommit) {
+          connection.setAutoCommit(autoCommit);
+        }
+        if (connection.getTransactionIsolation() != isolationLevel) {
+          connection.setTransactionIsolation(isolationLevel);
+        }
+        connection.clearWarnings();
+        return true;
+      } catch (SQLException | RuntimeException e) {
+        LOG.debug("Failed to reset connection {}, closing it instead of returning it to the pool.", connection, e);
+        return false;
+      }
+    }
+  }
+}
@@ -27,7 +27,6 @@ import org.slf4j.LoggerFactory;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -37,7 +36,6 @@ import java.sql.SQLException;
 public class DBManager implements Destroyable {
   private static final Logger LOG = LoggerFactory.getLogger(DBManager.class);
   private final ConnectionConfig config;
-  private DriverCleanup driverCleanup;
 
   public DBManager(ConnectionConfig config) {
     this.config = config;
@@ -58,20 +56,9 @@ public class DBManager implements Destroyable {
   }
 
   public boolean tableExists(Class<? extends Driver> jdbcDriverClass, String tableName) {
-    try {
-      ensureJDBCDriverIsAvailable(jdbcDriverClass);
-    } catch (IllegalAccessException | InstantiationException | SQLException e) {
-      LOG.error("Unable to load or register JDBC driver {} while checking for the existence of the database table {}.",
-                jdbcDriverClass, tableName, e);
-      throw Throwables.propagate(e);
-    }
-
-    try (Connection connection = DriverManager.getConnection(config.connectionString,
-                                                             config.getConnectionArguments())) {
-      DatabaseMetaData metadata = connection.getMetaData();
-      try (ResultSet rs = metadata.getTables(null, null, tableName, null)) {
-        return rs.next();
-      }
+    try (Connection connection = ConnectionPool.getInstance().getConnection(jdbcDriverClass, config.connectionString,
+                                                                            config.getConnectionArguments())) {
+      return tableExists(connection, tableName);
     } catch (SQLException e) {
       LOG.error("Exception while trying to check the existence of database table {} for connection {}.",
                 tableName, config.connectionString, e);
@@ -80,19 +67,21 @@ public class DBManager implements Destroyable {
   }
 
   /**
-   * Ensures that the JDBC Driver specified in configuration is available and can be loaded. Also registers it with
-   * {@link DriverManager} if it is not already registered.
+   * Checks whether the given table exists, using the metadata of the given connection.
+   *
+   * @param connection the connection to the database
+   * @param tableName the name of the table
+   * @return whether the table exists
    */
-  public void ensureJDBCDriverIsAvailable(Class<? extends Driver> jdbcDriverClass)
-    throws IllegalAccessException, InstantiationException, SQLException {
-    driverCleanup = DBUtils.ensureJDBCDriverIsAvailable(jdbcDriverClass, config.connectionString,
-                                                        config.jdbcPluginType, config.jdbcPluginName);
+  public boolean tableExists(Connection connection, String tableName) throws SQLException {
+    DatabaseMetaData metadata = connection.getMetaData();
+    try (ResultSet rs = metadata.getTables(null, null, tableName, null)) {
+      return rs.next();
+    }
   }
 
   @Override
   public void destroy() {
-    if (driverCleanup != null) {
-      driverCleanup.destroy();
-    }
+    // connections are returned to the ConnectionPool when they are closed, which releases them once they are idle
   }
 }
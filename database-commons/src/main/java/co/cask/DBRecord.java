@@ -23,25 +23,18 @@ import com.google.common.base.Preconditions;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Time;
-import java.sql.Timestamp;
-import java.sql.Types;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
 import java.util.List;
-import javax.sql.rowset.serial.SerialBlob;
 
 /**
  * Writable class for DB Source/Sink
@@ -61,6 +54,22 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    */
   private int[] columnTypes;
 
+  /**
+   * Plan used to build records from a {@link ResultSet}. Created from the metadata of the first row read.
+   */
+  private DBRecordReadPlan readPlan;
+
+  /**
+   * Plan used to bind the {@link #record} to a {@link PreparedStatement}. Shared by the records with the same schema
+   * if the record was constructed with it, otherwise created from the {@link #columnTypes} when first written.
+   */
+  private DBRecordWritePlan writePlan;
+
+  /**
+   * Schema of the records read with {@link #readFields(DataInput)}, parsed from the configuration.
+   */
+  private Schema serializedSchema;
+
   /**
    * Used to construct a DBRecord from a StructuredRecord in the ETL Pipeline
    *
@@ -71,6 +80,18 @@ public class DBRecord implements Writable, DBWritable, Configurable {
     this.columnTypes = columnTypes;
   }
 
+  /**
+   * Used to construct a DBRecord from a StructuredRecord in the ETL Pipeline, with a write plan that was created
+   * for the schema of the record.
+   *
+   * @param record the {@link StructuredRecord} to construct the {@link DBRecord} from
+   * @param writePlan the plan to write the record to a table with
+   */
+  public DBRecord(StructuredRecord record, DBRecordWritePlan writePlan) {
+    this.record = record;
+    this.writePlan = writePlan;
+  }
+
   /**
    * Used in map-reduce. Do not remove.
    */
@@ -78,8 +99,45 @@ public class DBRecord implements Writable, DBWritable, Configurable {
   public DBRecord() {
   }
 
+  /**
+   * Reads a record that was written with {@link #write(DataOutput)}. The encoding does not contain the schema, which
+   * is taken from the {@link DBUtils#RECORD_SCHEMA} property of the configuration. The sink sets it if its input
+   * schema is known, and the source if its schema is configured; other callers must set it themselves. The column
+   * types of the record are taken from the {@link DBUtils#RECORD_COLUMN_TYPES} property, if it is set.
+   *
+   * @param in the {@link DataInput} to read the record from
+   */
   public void readFields(DataInput in) throws IOException {
-    // no-op, since we may never need to support a scenario where you read a DBRecord from a non-RDBMS source
+    // Hadoop re-uses the same DBRecord for every record it deserializes, so the schema is only parsed once
+    if (serializedSchema == null) {
+      String schema = conf == null ? null : conf.get(DBUtils.RECORD_SCHEMA);
+      if (schema == null) {
+        throw new IOException(String.format("The schema of the records must be set with the property '%s' to " +
+                                              "read a DBRecord.", DBUtils.RECORD_SCHEMA));
+      }
+      serializedSchema = Schema.parseJson(schema);
+      int[] types = conf.getInts(DBUtils.RECORD_COLUMN_TYPES);
+      columnTypes = types.length == 0 ? null : types;
+    }
+
+    List<Schema.Field> fields = serializedSchema.getFields();
+    int numFields = WritableUtils.readVInt(in);
+    if (numFields != fields.size()) {
+      throw new IOException(String.format("Expected a record with %d fields, but read a record with %d fields.",
+                                          fields.size(), numFields));
+    }
+    byte[] nulls = new byte[(numFields + 7) / 8];
+    in.readFully(nulls);
+
+    StructuredRecord.Builder builder = StructuredRecord.builder(serializedSchema);
+    for (int i = 0; i < numFields; i++) {
+      Schema.Field field = fields.get(i);
+      if ((nulls[i >> 3] & (1 << (i & 7))) == 0) {
+        builder.set(field.getName(), readFromDataIn(in, field));
+      }
+    }
+    record = builder.build();
+    writePlan = null;
   }
 
   /**
@@ -95,40 +153,43 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    * @param resultSet the {@link ResultSet} to build the {@link StructuredRecord} from
    */
   public void readFields(ResultSet resultSet) throws SQLException {
-    ResultSetMetaData metadata = resultSet.getMetaData();
-    List<Schema.Field> schemaFields = DBUtils.getSchemaFields(resultSet, conf.get(DBUtils.OVERRIDE_SCHEMA));
-    Schema schema = Schema.recordOf("dbRecord", schemaFields);
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
-    for (int i = 0; i < schemaFields.size(); i++) {
-      Schema.Field field = schemaFields.get(i);
-      int sqlType = metadata.getColumnType(i + 1);
-      int sqlPrecision = metadata.getPrecision(i + 1);
-      int sqlScale = metadata.getScale(i + 1);
-      setField(resultSet, recordBuilder, field, sqlType, sqlPrecision, sqlScale);
+    // The record reader re-uses the same DBRecord for every row of a split,
+    // so the metadata and schema are only resolved for the first row.
+    if (readPlan == null) {
+      LobReader lobReader = new LobReader(conf.getInt(DBUtils.MAX_LOB_SIZE, LobReader.MAX_LOB_SIZE),
+                                          LobSizePolicy.getPolicy(conf.get(DBUtils.LOB_SIZE_POLICY)));
+      readPlan = DBRecordReadPlan.create(resultSet, conf.get(DBUtils.OVERRIDE_SCHEMA),
+                                         FieldCase.toFieldCase(conf.get(DBUtils.COLUMN_NAME_CASE)), lobReader);
     }
-    record = recordBuilder.build();
+    record = readPlan.read(resultSet);
   }
 
-  private void setField(ResultSet resultSet, StructuredRecord.Builder recordBuilder, Schema.Field field, int sqlType,
-                        int sqlPrecision, int sqlScale) throws SQLException {
-    Object o = DBUtils.transformValue(sqlType, sqlPrecision, sqlScale, resultSet, field.getName());
-    if (o instanceof Date) {
-      recordBuilder.setDate(field.getName(), ((Date) o).toLocalDate());
-    } else if (o instanceof Time) {
-      recordBuilder.setTime(field.getName(), ((Time) o).toLocalTime());
-    } else if (o instanceof Timestamp) {
-      Instant instant = ((Timestamp) o).toInstant();
-      recordBuilder.setTimestamp(field.getName(), instant.atZone(ZoneId.ofOffset("UTC", ZoneOffset.UTC)));
-    } else {
-      recordBuilder.set(field.getName(), o);
+  /**
+   * Writes the {@link #record} in a compact binary encoding, to be read with {@link #readFields(DataInput)}.
+   * The encoding is the number of fields, a bitmap with a bit set for every null field, and the values of the other
+   * fields in the order of the schema. Ints, longs and the lengths of strings and bytes are written as variable
+   * length integers, and strings are encoded with UTF-8.
+   *
+   * @param out the {@link DataOutput} to write the record to
+   */
+  public void write(DataOutput out) throws IOException {
+    List<Schema.Field> fields = record.getSchema().getFields();
+    int numFields = fields.size();
+    Object[] values = new Object[numFields];
+    byte[] nulls = new byte[(numFields + 7) / 8];
+    for (int i = 0; i < numFields; i++) {
+      values[i] = record.get(fields.get(i).getName());
+      if (values[i] == null) {
+        nulls[i >> 3] |= 1 << (i & 7);
+      }
     }
-  }
 
-  public void write(DataOutput out) throws IOException {
-    Schema recordSchema = record.getSchema();
-    List<Schema.Field> schemaFields = recordSchema.getFields();
-    for (Schema.Field field : schemaFields) {
-      writeToDataOut(out, field);
+    WritableUtils.writeVInt(out, numFields);
+    out.write(nulls);
+    for (int i = 0; i < numFields; i++) {
+      if (values[i] != null) {
+        writeToDataOut(out, fields.get(i), values[i]);
+      }
     }
   }
 
@@ -138,11 +199,59 @@ public class DBRecord implements Writable, DBWritable, Configurable {
    * @param stmt the {@link PreparedStatement} to write the {@link StructuredRecord} to
    */
   public void write(PreparedStatement stmt) throws SQLException {
-    Schema recordSchema = record.getSchema();
-    List<Schema.Field> schemaFields = recordSchema.getFields();
-    for (int i = 0; i < schemaFields.size(); i++) {
-      writeToDB(stmt, schemaFields.get(i), i);
+    getWritePlan().write(record, stmt, 0);
+  }
+
+  /**
+   * Writes the {@link #record} to the specified {@link PreparedStatement}, for statements that write several records.
+   * The fields are bound to consecutive parameters, starting after the given number of parameters.
+   *
+   * @param stmt the {@link PreparedStatement} to write the {@link StructuredRecord} to
+   * @param parameterOffset the number of parameters before the first parameter of the record
+   */
+  public void write(PreparedStatement stmt, int parameterOffset) throws SQLException {
+    getWritePlan().write(record, stmt, parameterOffset);
+  }
+
+  /**
+   * Writes the {@link #record} to the specified {@link PreparedStatement}, for statements that do not have one
+   * parameter per field in the order of the fields.
+   *
+   * @param stmt the {@link PreparedStatement} to write the {@link StructuredRecord} to
+   * @param parameterFields the index of the field to bind to each parameter of the statement
+   */
+  public void write(PreparedStatement stmt, int[] parameterFields) throws SQLException {
+    getWritePlan().write(record, stmt, parameterFields);
+  }
+
+  private DBRecordWritePlan getWritePlan() {
+    if (writePlan == null) {
+      writePlan = DBRecordWritePlan.create(record.getSchema(), columnTypes);
     }
+    return writePlan;
+  }
+
+  /**
+   * Returns an estimate of the number of bytes of the values of the {@link #record}, as they are bound to a
+   * statement. Strings are counted with one byte per character, and values of other simple types with 8 bytes.
+   *
+   * @return the estimated size of the record in bytes
+   */
+  public long getEstimatedSize() {
+    long size = 0;
+    for (Schema.Field field : record.getSchema().getFields()) {
+      Object value = record.get(field.getName());
+      if (value instanceof String) {
+        size += ((String) value).length();
+      } else if (value instanceof byte[]) {
+        size += ((byte[]) value).length;
+      } else if (value instanceof ByteBuffer) {
+        size += ((ByteBuffer) value).remaining();
+      } else {
+        size += 8;
+      }
+    }
+    return size;
   }
 
   private Schema getNonNullableSchema(Schema.Field field) {
@@ -158,130 +267,72 @@ public class DBRecord implements Writable, DBWritable, Configurable {
     return schema;
   }
 
-  private void writeToDataOut(DataOutput out, Schema.Field field) throws IOException {
-    Schema fieldSchema = getNonNullableSchema(field);
-    Schema.Type fieldType = fieldSchema.getType();
-    Object fieldValue = record.get(field.getName());
-
-    if (fieldValue == null) {
-      return;
-    }
-
+  private void writeToDataOut(DataOutput out, Schema.Field field, Object fieldValue) throws IOException {
+    Schema.Type fieldType = getNonNullableSchema(field).getType();
     switch (fieldType) {
-      case NULL:
-        break;
       case STRING:
-        // write string appropriately
-        out.writeUTF((String) fieldValue);
+        writeBytes(out, Bytes.toBytes((String) fieldValue));
         break;
       case BOOLEAN:
         out.writeBoolean((Boolean) fieldValue);
         break;
       case INT:
-        // write short or int appropriately
-        out.writeInt((Integer) fieldValue);
+        // also used for dates and times in milliseconds
+        WritableUtils.writeVInt(out, (Integer) fieldValue);
         break;
       case LONG:
-        // write date, timestamp or long appropriately
-        out.writeLong((Long) fieldValue);
+        // also used for timestamps and times in microseconds
+        WritableUtils.writeVLong(out, (Long) fieldValue);
         break;
       case FLOAT:
-        // both real and float are set with the same method on prepared statement
         out.writeFloat((Float) fieldValue);
         break;
       case DOUBLE:
         out.writeDouble((Double) fieldValue);
         break;
       case BYTES:
-        out.write((byte[]) fieldValue);
+        if (fieldValue instanceof ByteBuffer) {
+          writeBytes(out, Bytes.toBytes((ByteBuffer) fieldValue));
+        } else {
+          writeBytes(out, (byte[]) fieldValue);
+        }
         break;
       default:
         throw new IOException(String.format("Unsupported datatype: %s with value: %s.", fieldType, fieldValue));
     }
   }
 
-  private void writeToDB(PreparedStatement stmt, Schema.Field field, int fieldIndex) throws SQLException {
-    String fieldName = field.getName();
-    Schema fieldSchema = getNonNullableSchema(field);
-    Schema.Type fieldType = fieldSchema.getType();
-    Schema.LogicalType fieldLogicalType = fieldSchema.getLogicalType();
-    Object fieldValue = record.get(fieldName);
-    int sqlIndex = fieldIndex + 1;
-
-    if (fieldValue == null) {
-      stmt.setNull(sqlIndex, columnTypes[fieldIndex]);
-      return;
-    }
-
-    if (fieldLogicalType != null) {
-      switch (fieldLogicalType) {
-        case DATE:
-          stmt.setDate(sqlIndex, Date.valueOf(record.getDate(fieldName)));
-          break;
-        case TIME_MILLIS:
-        case TIME_MICROS:
-          stmt.setTime(sqlIndex, Time.valueOf(record.getTime(fieldName)));
-          break;
-        case TIMESTAMP_MILLIS:
-        case TIMESTAMP_MICROS:
-          stmt.setTimestamp(sqlIndex, Timestamp.from(record.getTimestamp(fieldName).toInstant()));
-          break;
-      }
-      return;
-    }
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    WritableUtils.writeVInt(out, bytes.length);
+    out.write(bytes);
+  }
 
+  private Object readFromDataIn(DataInput in, Schema.Field field) throws IOException {
+    Schema.Type fieldType = getNonNullableSchema(field).getType();
     switch (fieldType) {
-      case NULL:
-        stmt.setNull(sqlIndex, columnTypes[fieldIndex]);
-        break;
       case STRING:
-        // clob can also be written to as setString
-        stmt.setString(sqlIndex, (String) fieldValue);
-        break;
+        return Bytes.toString(readBytes(in));
       case BOOLEAN:
-        stmt.setBoolean(sqlIndex, (Boolean) fieldValue);
-        break;
+        return in.readBoolean();
       case INT:
-        // write short or int appropriately
-        writeInt(stmt, fieldIndex, sqlIndex, fieldValue);
-        break;
+        return WritableUtils.readVInt(in);
       case LONG:
-        stmt.setLong(sqlIndex, (Long) fieldValue);
-        break;
+        return WritableUtils.readVLong(in);
       case FLOAT:
-        // both real and float are set with the same method on prepared statement
-        stmt.setFloat(sqlIndex, (Float) fieldValue);
-        break;
+        return in.readFloat();
       case DOUBLE:
-        stmt.setDouble(sqlIndex, (Double) fieldValue);
-        break;
+        return in.readDouble();
       case BYTES:
-        writeBytes(stmt, fieldIndex, sqlIndex, fieldValue);
-        break;
+        return readBytes(in);
       default:
-        throw new SQLException(String.format("Unsupported datatype: %s with value: %s.", fieldType, fieldValue));
+        throw new IOException(String.format("Unsupported datatype: %s for field: %s.", fieldType, field.getName()));
     }
   }
 
-  private void writeBytes(PreparedStatement stmt, int fieldIndex, int sqlIndex, Object fieldValue) throws SQLException {
-    byte[] byteValue = fieldValue instanceof ByteBuffer ? Bytes.toBytes((ByteBuffer) fieldValue) : (byte[]) fieldValue;
-    int parameterType = columnTypes[fieldIndex];
-    if (Types.BLOB == parameterType) {
-      stmt.setBlob(sqlIndex, new SerialBlob(byteValue));
-      return;
-    }
-    // handles BINARY, VARBINARY and LOGVARBINARY
-    stmt.setBytes(sqlIndex, byteValue);
-  }
-
-  private void writeInt(PreparedStatement stmt, int fieldIndex, int sqlIndex, Object fieldValue) throws SQLException {
-    Integer intValue = (Integer) fieldValue;
-    int parameterType = columnTypes[fieldIndex];
-    if (Types.TINYINT == parameterType || Types.SMALLINT == parameterType) {
-      stmt.setShort(sqlIndex, intValue.shortValue());
-      return;
-    }
-    stmt.setInt(sqlIndex, intValue);
+  private static byte[] readBytes(DataInput in) throws IOException {
+    byte[] bytes = new byte[WritableUtils.readVInt(in)];
+    in.readFully(bytes);
+    return bytes;
   }
 
   @Override
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Describes how the rows of a {@link ResultSet} are read into a {@link DBRecord}. The plan is derived once from the
+ * {@link ResultSetMetaData} of a query and is then reused for every row returned by that query, so that reading a row
+ * does not need to inspect the metadata or build the schema again.
+ * <p>
+ * Every field is read by a {@link FieldReader} that accesses its column by index, using the typed getter of
+ * {@link ResultSet} that matches the SQL type of the column.
+ */
+public final class DBRecordReadPlan {
+  private static final ZoneId UTC = ZoneId.ofOffset("UTC", ZoneOffset.UTC);
+
+  private final Schema schema;
+  private final FieldReader[] readers;
+
+  private DBRecordReadPlan(Schema schema, FieldReader[] readers) {
+    this.schema = schema;
+    this.readers = readers;
+  }
+
+  /**
+   * Creates a read plan for the given {@link ResultSet}.
+   *
+   * @param resultSet result set of executed query
+   * @param schemaStr schema string to override resultant schema
+   * @param fieldCase case of the field names of the records read with the plan
+   * @param lobReader reader for BLOB and CLOB values
+   * @return the read plan for every row of the result set
+   */
+  public static DBRecordReadPlan create(ResultSet resultSet, @Nullable String schemaStr,
+                                        FieldCase fieldCase, LobReader lobReader) throws SQLException {
+    ResultSetMetaData metadata = resultSet.getMetaData();
+    List<Schema.Field> schemaFields = DBUtils.getSchemaFields(resultSet, schemaStr);
+    // field names are converted once here, so that records are built directly with the converted names
+    Schema schema = StructuredRecordUtils.convertCase(Schema.recordOf("dbRecord", schemaFields), fieldCase);
+
+    // the override schema may contain a subset of the columns, in a different order
+    Map<String, Integer> nameToColumn = new HashMap<>();
+    for (int i = metadata.getColumnCount(); i >= 1; i--) {
+      nameToColumn.put(metadata.getColumnName(i), i);
+    }
+
+    List<Schema.Field> fields = schema.getFields();
+    FieldReader[] readers = new FieldReader[fields.size()];
+    for (int i = 0; i < readers.length; i++) {
+      int column = nameToColumn.get(schemaFields.get(i).getName());
+      Schema.Field field = fields.get(i);
+      // skipped LOBs can only be read as null for nullable fields
+      readers[i] = createReader(field.getName(), column, metadata.getColumnType(column),
+                                metadata.getPrecision(column), metadata.getScale(column),
+                                lobReader.forField(field.getSchema().isNullable()));
+    }
+    return new DBRecordReadPlan(schema, readers);
+  }
+
+  /**
+   * @return the schema of the records read with this plan
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Reads the current row of the given {@link ResultSet} into a {@link StructuredRecord}.
+   *
+   * @param resultSet the {@link ResultSet} positioned on the row to read
+   * @return the record read from the row
+   */
+  public StructuredRecord read(ResultSet resultSet) throws SQLException {
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
+    for (FieldReader reader : readers) {
+      reader.read(resultSet, recordBuilder);
+    }
+    return recordBuilder.build();
+  }
+
+  // the value types must match the schema returned by DBUtils#getSchema for the same sql type
+  private static FieldReader createReader(final String fieldName, final int column, int sqlType,
+                                          final int precision, final int scale, final LobReader lobReader) {
+    switch (sqlType) {
+      case Types.NULL:
+        return (resultSet, recordBuilder) -> recordBuilder.set(fieldName, null);
+
+      case Types.BOOLEAN:
+      case Types.BIT:
+        return (resultSet, recordBuilder) -> {
+          boolean value = resultSet.getBoolean(column);
+          recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+        };
+
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return (resultSet, recordBuilder) -> {
+          int value = resultSet.getInt(column);
+          recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+        };
+
+      case Types.BIGINT:
+        return (resultSet, recordBuilder) -> {
+          long value = resultSet.getLong(column);
+          recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+        };
+
+      case Types.REAL:
+      case Types.FLOAT:
+        return (resultSet, recordBuilder) -> {
+          float value = resultSet.getFloat(column);
+          recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+        };
+
+      case Types.DOUBLE:
+        return (resultSet, recordBuilder) -> {
+          double value = resultSet.getDouble(column);
+          recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+        };
+
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        // integral values that fit in a long are read without allocating a BigDecimal.
+        // a precision of 0 means that the driver does not know it, so such columns are still read as BigDecimal.
+        if (scale == 0 && precision > 0 && precision <= 9) {
+          return (resultSet, recordBuilder) -> {
+            int value = resultSet.getInt(column);
+            recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+          };
+        }
+        if (scale == 0 && precision > 9 && precision <= 18) {
+          return (resultSet, recordBuilder) -> {
+            long value = resultSet.getLong(column);
+            recordBuilder.set(fieldName, resultSet.wasNull() ? null : value);
+          };
+        }
+        return (resultSet, recordBuilder) -> {
+          BigDecimal decimal = resultSet.getBigDecimal(column);
+          if (decimal == null) {
+            recordBuilder.set(fieldName, null);
+          } else if (scale != 0) {
+            // if there are digits after the point, use double types
+            recordBuilder.set(fieldName, decimal.doubleValue());
+          } else if (precision > 9) {
+            // with 10 digits we can represent 2^32 and LONG is required
+            recordBuilder.set(fieldName, decimal.longValue());
+          } else {
+            recordBuilder.set(fieldName, decimal.intValue());
+          }
+        };
+
+      case Types.DATE:
+        return (resultSet, recordBuilder) -> {
+          Date date = resultSet.getDate(column);
+          recordBuilder.setDate(fieldName, date == null ? null : date.toLocalDate());
+        };
+
+      case Types.TIME:
+        return (resultSet, recordBuilder) -> {
+          Time time = resultSet.getTime(column);
+          recordBuilder.setTime(fieldName, time == null ? null : time.toLocalTime());
+        };
+
+      case Types.TIMESTAMP:
+        return (resultSet, recordBuilder) -> {
+          Timestamp timestamp = resultSet.getTimestamp(column);
+          recordBuilder.setTimestamp(fieldName, timestamp == null ? null : timestamp.toInstant().atZone(UTC));
+        };
+
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+        return (resultSet, recordBuilder) -> recordBuilder.set(fieldName, resultSet.getBytes(column));
+
+      case Types.BLOB:
+        return (resultSet, recordBuilder) -> {
+          Blob blob = resultSet.getBlob(column);
+          recordBuilder.set(fieldName, blob == null ? null : lobReader.read(blob, fieldName));
+        };
+
+      case Types.CLOB:
+      case Types.NCLOB:
+        return (resultSet, recordBuilder) -> {
+          Clob clob = resultSet.getClob(column);
+          recordBuilder.set(fieldName, clob == null ? null : lobReader.read(clob, fieldName));
+        };
+
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.LONGNVARCHAR:
+      case Types.ROWID:
+        return (resultSet, recordBuilder) -> recordBuilder.set(fieldName, resultSet.getString(column));
+
+      default:
+        return (resultSet, recordBuilder) -> recordBuilder.set(fieldName, resultSet.getObject(column));
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Describes how the fields of a {@link DBRecord} are bound to the parameters of a {@link PreparedStatement}. The plan
+ * is derived once from the schema of the records and the SQL types of the columns they are written to, and is then
+ * reused for every record with that schema, so that writing a record does not need to inspect its schema again.
+ * <p>
+ * Every field is bound by a {@link FieldWriter} that uses the typed setter of {@link PreparedStatement} that matches
+ * the type of the field and the SQL type of its column.
+ */
+public final class DBRecordWritePlan {
+  private final Schema schema;
+  private final FieldWriter[] writers;
+
+  private DBRecordWritePlan(Schema schema, FieldWriter[] writers) {
+    this.schema = schema;
+    this.writers = writers;
+  }
+
+  /**
+   * Creates a write plan for records with the given schema.
+   *
+   * @param schema the schema of the records, with a field for every column that is written
+   * @param columnTypes the SQL type of the column of every field, as defined in {@link Types}
+   * @return the write plan for records with the schema
+   */
+  public static DBRecordWritePlan create(Schema schema, int[] columnTypes) {
+    List<Schema.Field> fields = schema.getFields();
+    FieldWriter[] writers = new FieldWriter[fields.size()];
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = createWriter(fields.get(i), columnTypes[i]);
+    }
+    return new DBRecordWritePlan(schema, writers);
+  }
+
+  /**
+   * @return the schema of the records written with this plan
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Binds the fields of the record to consecutive parameters of the statement, starting after the given number of
+   * parameters.
+   *
+   * @param record the record to write
+   * @param stmt the {@link PreparedStatement} to bind the parameters of
+   * @param parameterOffset the number of parameters before the first parameter of the record
+   */
+  public void write(StructuredRecord record, PreparedStatement stmt, int parameterOffset) throws SQLException {
+    for (int i = 0; i < writers.length; i++) {
+      writers[i].write(record, stmt, parameterOffset + i + 1);
+    }
+  }
+
+  /**
+   * Binds the fields of the record to the parameters of the statement, for statements that do not have one parameter
+   * per field in the order of the fields.
+   *
+   * @param record the record to write
+   * @param stmt the {@link PreparedStatement} to bind the parameters of
+   * @param parameterFields the index of the field to bind to each parameter of the statement
+   */
+  public void write(StructuredRecord record, PreparedStatement stmt, int[] parameterFields) throws SQLException {
+    for (int i = 0; i < parameterFields.length; i++) {
+      writers[parameterFields[i]].write(record, stmt, i + 1);
+    }
+  }
+
+  private static FieldWriter createWriter(Schema.Field field, final int columnType) {
+    final String fieldName = field.getName();
+    Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+    final Schema.Type fieldType = fieldSchema.getType();
+    Preconditions.checkArgument(fieldType.isSimpleType(),
+                                "Only simple types are supported (boolean, int, long, float, double, string, bytes) " +
+                                  "for writing a DBRecord, but found '%s' as the type for column '%s'. Please " +
+                                  "remove this column or transform it to a simple type.", fieldType, fieldName);
+
+    final Schema.LogicalType logicalType = fieldSchema.getLogicalType();
+    if (logicalType != null) {
+      switch (logicalType) {
+        case DATE:
+          return (record, stmt, parameter) -> {
+            if (record.get(fieldName) == null) {
+              stmt.setNull(parameter, columnType);
+            } else {
+              stmt.setDate(parameter, Date.valueOf(record.getDate(fieldName)));
+            }
+          };
+        case TIME_MILLIS:
+        case TIME_MICROS:
+          return (record, stmt, parameter) -> {
+            if (record.get(fieldName) == null) {
+              stmt.setNull(parameter, columnType);
+            } else {
+              stmt.setTime(parameter, Time.valueOf(record.getTime(fieldName)));
+            }
+          };
+        case TIMESTAMP_MILLIS:
+        case TIMESTAMP_MICROS:
+          return (record, stmt, parameter) -> {
+            if (record.get(fieldName) == null) {
+              stmt.setNull(parameter, columnType);
+            } else {
+              stmt.setTimestamp(parameter, Timestamp.from(record.getTimestamp(fieldName).toInstant()));
+            }
+          };
+        default:
+          return (record, stmt, parameter) -> {
+            Object value = record.get(fieldName);
+            if (value != null) {
+              throw new SQLException(String.format("Unsupported logical type: %s with value: %s.",
+                                                   logicalType, value));
+            }
+            stmt.setNull(parameter, columnType);
+          };
+      }
+    }
+
+    switch (fieldType) {
+      case NULL:
+        return (record, stmt, parameter) -> stmt.setNull(parameter, columnType);
+      case STRING:
+        // clob can also be written to as setString
+        return (record, stmt, parameter) -> {
+          String value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setString(parameter, value);
+          }
+        };
+      case BOOLEAN:
+        return (record, stmt, parameter) -> {
+          Boolean value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setBoolean(parameter, value);
+          }
+        };
+      case INT:
+        if (columnType == Types.TINYINT || columnType == Types.SMALLINT) {
+          return (record, stmt, parameter) -> {
+            Integer value = record.get(fieldName);
+            if (value == null) {
+              stmt.setNull(parameter, columnType);
+            } else {
+              stmt.setShort(parameter, value.shortValue());
+            }
+          };
+        }
+        return (record, stmt, parameter) -> {
+          Integer value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setInt(parameter, value);
+          }
+        };
+      case LONG:
+        return (record, stmt, parameter) -> {
+          Long value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setLong(parameter, value);
+          }
+        };
+      case FLOAT:
+        // both real and float are set with the same method on prepared statement
+        return (record, stmt, parameter) -> {
+          Float value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setFloat(parameter, value);
+          }
+        };
+      case DOUBLE:
+        return (record, stmt, parameter) -> {
+          Double value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setDouble(parameter, value);
+          }
+        };
+      case BYTES:
+        if (columnType == Types.BLOB) {
+          // streams the bytes of the value, instead of copying them into a Blob
+          return (record, stmt, parameter) -> {
+            Object value = record.get(fieldName);
+            if (value == null) {
+              stmt.setNull(parameter, columnType);
+            } else if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+              ByteBuffer buffer = (ByteBuffer) value;
+              stmt.setBinaryStream(parameter, new ByteArrayInputStream(
+                buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()), buffer.remaining());
+            } else {
+              byte[] bytes = toBytes(value);
+              stmt.setBinaryStream(parameter, new ByteArrayInputStream(bytes), bytes.length);
+            }
+          };
+        }
+        // handles BINARY, VARBINARY and LOGVARBINARY
+        return (record, stmt, parameter) -> {
+          Object value = record.get(fieldName);
+          if (value == null) {
+            stmt.setNull(parameter, columnType);
+          } else {
+            stmt.setBytes(parameter, toBytes(value));
+          }
+        };
+      default:
+        return (record, stmt, parameter) -> {
+          Object value = record.get(fieldName);
+          if (value != null) {
+            throw new SQLException(String.format("Unsupported datatype: %s with value: %s.", fieldType, value));
+          }
+          stmt.setNull(parameter, columnType);
+        };
+    }
+  }
+
+  private static byte[] toBytes(Object value) {
+    return value instanceof ByteBuffer ? Bytes.toBytes((ByteBuffer) value) : (byte[]) value;
+  }
+}
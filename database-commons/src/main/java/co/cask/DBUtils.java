@@ -31,7 +31,6 @@ import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -54,6 +53,12 @@ public final class DBUtils {
   private static final Logger LOG = LoggerFactory.getLogger(DBUtils.class);
   public static final String OVERRIDE_SCHEMA = "co.cask.hydrator.db.override.schema";
   public static final String CONNECTION_ARGUMENTS = "co.cask.hydrator.db.connection.arguments";
+  public static final String COLUMN_NAME_CASE = "co.cask.hydrator.db.column.name.case";
+  public static final String MAX_LOB_SIZE = "co.cask.hydrator.db.max.lob.size";
+  public static final String LOB_SIZE_POLICY = "co.cask.hydrator.db.lob.size.policy";
+  // the schema of serialized DBRecords, which the source and sink set if the schema of their records is known
+  public static final String RECORD_SCHEMA = "co.cask.hydrator.db.record.schema";
+  public static final String RECORD_COLUMN_TYPES = "co.cask.hydrator.db.record.column.types";
 
   /**
    * Performs any Database related cleanup
@@ -72,34 +77,6 @@ public final class DBUtils {
     unregisterOracleMBean(pluginClassLoader);
   }
 
-  /**
-   * Ensures that the JDBC Driver specified in configuration is available and can be loaded. Also registers it with
-   * {@link DriverManager} if it is not already registered.
-   */
-  public static DriverCleanup ensureJDBCDriverIsAvailable(Class<? extends Driver> jdbcDriverClass,
-                                                          String connectionString,
-                                                          String jdbcPluginType, String jdbcPluginName)
-    throws IllegalAccessException, InstantiationException, SQLException {
-
-    try {
-      DriverManager.getDriver(connectionString);
-      return new DriverCleanup(null);
-    } catch (SQLException e) {
-      // Driver not found. We will try to register it with the DriverManager.
-      LOG.debug("Plugin Type: {} and Plugin Name: {}; Driver Class: {} not found. Registering JDBC driver via shim {} ",
-                jdbcPluginType, jdbcPluginName, jdbcDriverClass.getName(),
-                JDBCDriverShim.class.getName());
-      final JDBCDriverShim driverShim = new JDBCDriverShim(jdbcDriverClass.newInstance());
-      try {
-        DBUtils.deregisterAllDrivers(jdbcDriverClass);
-      } catch (NoSuchFieldException | ClassNotFoundException e1) {
-        LOG.error("Unable to deregister JDBC Driver class {}", jdbcDriverClass);
-      }
-      DriverManager.registerDriver(driverShim);
-      return new DriverCleanup(driverShim);
-    }
-  }
-
   /**
    * Given the result set, get the metadata of the result set and return
    * list of {@link co.cask.cdap.api.data.schema.Schema.Field},
@@ -157,8 +134,19 @@ public final class DBUtils {
    * @throws SQLException
    */
   public static List<Schema.Field> getSchemaFields(ResultSet resultSet) throws SQLException {
+    return getSchemaFields(resultSet.getMetaData());
+  }
+
+  /**
+   * Returns the list of {@link co.cask.cdap.api.data.schema.Schema.Field} for the columns of the given metadata,
+   * which may be the metadata of a result set or of a prepared statement.
+   *
+   * @param metadata metadata of the columns of a query
+   * @return list of schema fields
+   * @throws SQLException
+   */
+  public static List<Schema.Field> getSchemaFields(ResultSetMetaData metadata) throws SQLException {
     List<Schema.Field> schemaFields = Lists.newArrayList();
-    ResultSetMetaData metadata = resultSet.getMetaData();
     // ResultSetMetadata columns are numbered starting with 1
     for (int i = 1; i <= metadata.getColumnCount(); i++) {
       String columnName = metadata.getColumnName(i);
@@ -277,56 +265,14 @@ public final class DBUtils {
         case Types.ROWID:
           return resultSet.getString(fieldName);
         case Types.BLOB:
-          Blob blob = (Blob) original;
-          try {
-            return blob.getBytes(1, (int) blob.length());
-          } finally {
-            blob.free();
-          }
+          return new LobReader(LobReader.MAX_LOB_SIZE, LobSizePolicy.FAIL).read((Blob) original, fieldName);
         case Types.CLOB:
-          Clob clob = (Clob) original;
-          try {
-            return clob.getSubString(1, (int) clob.length());
-          } finally {
-            clob.free();
-          }
+          return new LobReader(LobReader.MAX_LOB_SIZE, LobSizePolicy.FAIL).read((Clob) original, fieldName);
       }
     }
     return original;
   }
 
-  /**
-   * De-register all SQL drivers that are associated with the class
-   */
-  public static void deregisterAllDrivers(Class<? extends Driver> driverClass)
-    throws NoSuchFieldException, IllegalAccessException, ClassNotFoundException {
-    Field field = DriverManager.class.getDeclaredField("registeredDrivers");
-    field.setAccessible(true);
-    List<?> list = (List<?>) field.get(null);
-    for (Object driverInfo : list) {
-      Class<?> driverInfoClass = DBUtils.class.getClassLoader().loadClass("java.sql.DriverInfo");
-      Field driverField = driverInfoClass.getDeclaredField("driver");
-      driverField.setAccessible(true);
-      Driver d = (Driver) driverField.get(driverInfo);
-      if (d == null) {
-        LOG.debug("Found null driver object in drivers list. Ignoring.");
-        continue;
-      }
-      LOG.debug("Removing non-null driver object from drivers list.");
-      ClassLoader registeredDriverClassLoader = d.getClass().getClassLoader();
-      if (registeredDriverClassLoader == null) {
-        LOG.debug("Found null classloader for default driver {}. Ignoring since this may be using system classloader.",
-                  d.getClass().getName());
-        continue;
-      }
-      // Remove all objects in this list that were created using the classloader of the caller.
-      if (d.getClass().getClassLoader().equals(driverClass.getClassLoader())) {
-        LOG.debug("Removing default driver {} from registeredDrivers", d.getClass().getName());
-        list.remove(driverInfo);
-      }
-    }
-  }
-
   /**
    * Shuts down a cleanup thread com.mysql.jdbc.AbandonedConnectionCleanupThread that mysql driver fails to destroy
    * If this is not done, the thread keeps a reference to the classloader, thereby causing OOMs or too many open files
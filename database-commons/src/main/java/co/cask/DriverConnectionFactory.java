@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Opens connections with the JDBC driver of a plugin directly, instead of through the {@link DriverManager}.
+ * <p>
+ * The {@link DriverManager} synchronizes on every connection, probes every registered driver for the connection
+ * string, and only uses drivers that are visible to the class loader of the caller, which excludes drivers loaded by
+ * a plugin class loader. Instead, one instance of each driver class is created, and connections are opened with
+ * {@link Driver#connect(String, Properties)}, so drivers never need to be registered with the {@link DriverManager}.
+ * Since a class is loaded by a single class loader, this is one driver instance per class loader, and the instance is
+ * released together with the class.
+ */
+public final class DriverConnectionFactory {
+  private static final ClassValue<Driver> DRIVERS = new ClassValue<Driver>() {
+    @Override
+    protected Driver computeValue(Class<?> driverClass) {
+      try {
+        return (Driver) driverClass.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new IllegalArgumentException(String.format("Unable to instantiate JDBC driver class %s.",
+                                                         driverClass.getName()), e);
+      }
+    }
+  };
+
+  private DriverConnectionFactory() {
+  }
+
+  /**
+   * Returns the instance of the given driver class that connections are opened with.
+   *
+   * @param driverClass the JDBC driver class
+   * @return the driver instance
+   * @throws IllegalArgumentException if the driver class could not be instantiated
+   */
+  public static Driver getDriver(Class<? extends Driver> driverClass) {
+    return DRIVERS.get(driverClass);
+  }
+
+  /**
+   * Opens a connection to the given database with the given driver class.
+   *
+   * @param driverClass the JDBC driver class
+   * @param url the connection string of the database
+   * @param properties the connection arguments, including the user and password
+   * @return a new connection to the database
+   * @throws SQLException if the driver does not accept the connection string, or failed to connect
+   */
+  public static Connection connect(Class<? extends Driver> driverClass, String url,
+                                   Properties properties) throws SQLException {
+    Connection connection = getDriver(driverClass).connect(url, properties);
+    if (connection == null) {
+      // drivers return null instead of throwing for connection strings of other databases
+      throw new SQLException(String.format("JDBC driver %s does not accept the connection string %s.",
+                                           driverClass.getName(), url), "08001");
+    }
+    return connection;
+  }
+
+  /**
+   * Loads the JDBC driver class set with {@link DBConfiguration#DRIVER_CLASS_PROPERTY} with the class loader of the
+   * given configuration.
+   *
+   * @param conf the configuration of the job
+   * @return the JDBC driver class
+   * @throws ClassNotFoundException if the driver class could not be found
+   */
+  public static Class<? extends Driver> loadDriverClass(Configuration conf) throws ClassNotFoundException {
+    return conf.getClassLoader().loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY)).asSubclass(Driver.class);
+  }
+}
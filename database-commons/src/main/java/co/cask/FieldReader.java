@@ -16,30 +16,23 @@
 
 package co.cask;
 
-import co.cask.cdap.etl.api.Destroyable;
-import com.google.common.base.Throwables;
+import co.cask.cdap.api.data.format.StructuredRecord;
 
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import javax.annotation.Nullable;
 
 /**
- * class to de-register driver
+ * Reads a single column of the current row of a {@link ResultSet} into a field of a {@link StructuredRecord}.
+ *
+ * @see DBRecordReadPlan
  */
-public class DriverCleanup implements Destroyable {
-  private final JDBCDriverShim driverShim;
-
-  DriverCleanup(@Nullable JDBCDriverShim driverShim) {
-    this.driverShim = driverShim;
-  }
+public interface FieldReader {
 
-  public void destroy() {
-    if (driverShim != null) {
-      try {
-        DriverManager.deregisterDriver(driverShim);
-      } catch (SQLException e) {
-        throw Throwables.propagate(e);
-      }
-    }
-  }
+  /**
+   * Reads the column from the current row of the result set and sets it on the record builder.
+   *
+   * @param resultSet     the {@link ResultSet} positioned on the row to read
+   * @param recordBuilder the builder of the record to set the field on
+   */
+  void read(ResultSet resultSet, StructuredRecord.Builder recordBuilder) throws SQLException;
 }
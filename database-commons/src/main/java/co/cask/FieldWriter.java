@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds a single field of a {@link StructuredRecord} to a parameter of a {@link PreparedStatement}.
+ *
+ * @see DBRecordWritePlan
+ */
+public interface FieldWriter {
+
+  /**
+   * Binds the field of the record to the parameter of the statement.
+   *
+   * @param record    the record to take the field from
+   * @param stmt      the {@link PreparedStatement} to bind the parameter of
+   * @param parameter the index of the parameter, starting at 1
+   */
+  void write(StructuredRecord record, PreparedStatement stmt, int parameter) throws SQLException;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import javax.annotation.Nullable;
+
+/**
+ * Reads BLOB and CLOB values through their streams, into a single array of the size of the value. Values larger than
+ * the maximum LOB size are handled according to a {@link LobSizePolicy}, rather than being truncated to the size of
+ * an int. The LOB is freed as soon as it has been read.
+ * <p>
+ * A value can only be skipped by reading it as null if its field is nullable, so readers for fields that are not
+ * nullable, returned by {@link #forField(boolean)}, skip values by reading them as empty instead.
+ */
+public final class LobReader {
+  /**
+   * Largest array size that can be allocated on all JVMs, and the default maximum LOB size.
+   */
+  public static final int MAX_LOB_SIZE = Integer.MAX_VALUE - 8;
+
+  private final int maxSize;
+  private final LobSizePolicy policy;
+  // whether skipped values are read as empty rather than as null
+  private final boolean skipAsEmpty;
+
+  /**
+   * @param maxSize the maximum number of bytes of a BLOB or characters of a CLOB value
+   * @param policy what to do with values that are larger than the maximum size
+   */
+  public LobReader(int maxSize, LobSizePolicy policy) {
+    this(maxSize, policy, false);
+  }
+
+  private LobReader(int maxSize, LobSizePolicy policy, boolean skipAsEmpty) {
+    this.maxSize = Math.min(maxSize, MAX_LOB_SIZE);
+    this.policy = policy;
+    this.skipAsEmpty = skipAsEmpty;
+  }
+
+  /**
+   * Returns the reader for the values of a field. If the field is not nullable, values that are skipped are read as
+   * an empty array or string instead of null.
+   *
+   * @param nullable whether the field is nullable
+   * @return the reader for the values of the field
+   */
+  public LobReader forField(boolean nullable) {
+    return nullable || policy != LobSizePolicy.SKIP ? this : new LobReader(maxSize, policy, true);
+  }
+
+  /**
+   * Reads the bytes of a BLOB and frees it.
+   *
+   * @param blob the BLOB to read
+   * @param fieldName the name of the field the BLOB is read for
+   * @return the bytes of the BLOB, or {@code null} if the BLOB is too large and skipped, or an empty array if it is
+   *         skipped for a field that is not nullable
+   */
+  @Nullable
+  public byte[] read(Blob blob, String fieldName) throws SQLException {
+    try {
+      int length = getReadLength(blob.length(), fieldName, "bytes");
+      if (length < 0) {
+        return null;
+      }
+      byte[] bytes = new byte[length];
+      try (InputStream in = blob.getBinaryStream()) {
+        ByteStreams.readFully(in, bytes);
+      } catch (IOException e) {
+        throw new SQLException(String.format("Failed to read BLOB of field '%s'.", fieldName), e);
+      }
+      return bytes;
+    } finally {
+      blob.free();
+    }
+  }
+
+  /**
+   * Reads the characters of a CLOB and frees it.
+   *
+   * @param clob the CLOB to read
+   * @param fieldName the name of the field the CLOB is read for
+   * @return the characters of the CLOB, or {@code null} if the CLOB is too large and skipped, or an empty string if
+   *         it is skipped for a field that is not nullable
+   */
+  @Nullable
+  public String read(Clob clob, String fieldName) throws SQLException {
+    try {
+      int length = getReadLength(clob.length(), fieldName, "characters");
+      if (length < 0) {
+        return null;
+      }
+      char[] chars = new char[length];
+      try (Reader reader = clob.getCharacterStream()) {
+        readFully(reader, chars);
+      } catch (IOException e) {
+        throw new SQLException(String.format("Failed to read CLOB of field '%s'.", fieldName), e);
+      }
+      return new String(chars);
+    } finally {
+      clob.free();
+    }
+  }
+
+  /**
+   * Returns the number of bytes or characters to read from a LOB of the given length, or -1 to read it as null.
+   */
+  private int getReadLength(long length, String fieldName, String unit) {
+    if (length <= maxSize) {
+      return (int) length;
+    }
+    switch (policy) {
+      case SKIP:
+        return skipAsEmpty ? 0 : -1;
+      case TRUNCATE:
+        return maxSize;
+      default:
+        throw new IllegalArgumentException(String.format(
+          "Value of field '%s' has %d %s, which exceeds the maximum LOB size of %d. " +
+            "Increase the maximum LOB size, or set the LOB size policy to skip or truncate such values.",
+          fieldName, length, unit, maxSize));
+    }
+  }
+
+  private static void readFully(Reader reader, char[] chars) throws IOException {
+    int offset = 0;
+    while (offset < chars.length) {
+      int read = reader.read(chars, offset, chars.length - offset);
+      if (read < 0) {
+        throw new EOFException(String.format("Expected %d characters, but only got %d.", chars.length, offset));
+      }
+      offset += read;
+    }
+  }
+}
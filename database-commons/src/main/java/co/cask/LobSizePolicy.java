@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * What to do with BLOB and CLOB values that are larger than the maximum LOB size.
+ *
+ * @see LobReader
+ */
+public enum LobSizePolicy {
+  /**
+   * Fail the pipeline.
+   */
+  FAIL,
+  /**
+   * Read the value as null.
+   */
+  SKIP,
+  /**
+   * Read the first bytes or characters of the value, up to the maximum LOB size.
+   */
+  TRUNCATE;
+
+  /**
+   * Translates a policy string to the corresponding policy. Defaults to {@link #FAIL} if the given input is
+   * {@code null}.
+   */
+  public static LobSizePolicy getPolicy(@Nullable String policy) {
+    if (policy == null) {
+      return FAIL;
+    }
+    return valueOf(policy.toUpperCase());
+  }
+
+  /**
+   * Validates that the given policy is either null or one of the possible LOB size policies.
+   *
+   * @param policy the policy to check
+   */
+  public static void validate(@Nullable String policy) {
+    try {
+      getPolicy(policy);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format(
+        "LOB size policy must be one of the following values: %s, but got: %s.", Arrays.toString(values()), policy));
+    }
+  }
+}
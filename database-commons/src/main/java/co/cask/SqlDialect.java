@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+/**
+ * SQL dialect of a database, for statements that are not standard SQL.
+ */
+public enum SqlDialect {
+  GENERIC,
+  POSTGRESQL,
+  MYSQL,
+  ORACLE,
+  SQLSERVER,
+  PHOENIX;
+
+  /**
+   * Returns the dialect of the database with the given JDBC connection string, or {@link #GENERIC} if the database
+   * is not known.
+   */
+  public static SqlDialect fromConnectionString(String connectionString) {
+    if (connectionString.startsWith("jdbc:postgresql:")) {
+      return POSTGRESQL;
+    }
+    if (connectionString.startsWith("jdbc:mysql:") || connectionString.startsWith("jdbc:mariadb:")) {
+      return MYSQL;
+    }
+    if (connectionString.startsWith("jdbc:oracle:")) {
+      return ORACLE;
+    }
+    if (connectionString.startsWith("jdbc:sqlserver:") || connectionString.startsWith("jdbc:jtds:sqlserver:")) {
+      return SQLSERVER;
+    }
+    if (connectionString.startsWith("jdbc:phoenix")) {
+      return PHOENIX;
+    }
+    return GENERIC;
+  }
+}
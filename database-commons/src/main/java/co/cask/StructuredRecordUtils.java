@@ -20,9 +20,9 @@ import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Utils class that contains StructuredRecord related transformations.
@@ -42,25 +42,43 @@ public class StructuredRecordUtils {
       return input;
     }
 
-    Schema oldSchema = input.getSchema();
-    Map<String, String> fieldNameMap = new HashMap<>();
+    List<Schema.Field> oldFields = input.getSchema().getFields();
+    Schema newSchema = convertCase(input.getSchema(), fieldCase);
+    List<Schema.Field> newFields = newSchema.getFields();
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(newSchema);
+    for (int i = 0; i < oldFields.size(); i++) {
+      recordBuilder.set(newFields.get(i).getName(), input.get(oldFields.get(i).getName()));
+    }
+    return recordBuilder.build();
+  }
+
+  /**
+   * Converts the field names in the input {@link Schema} to a desired case
+   *
+   * @param schema    {@link Schema} of a record
+   * @param fieldCase {@link FieldCase}
+   * @return record {@link Schema} with the same fields in the same order, with names confirming to the
+   *   {@link FieldCase} passed in
+   * @throws IllegalStateException if there is a conflict in the field names while converting the case
+   */
+  public static Schema convertCase(Schema schema, FieldCase fieldCase) {
+    if (fieldCase.equals(FieldCase.NONE)) {
+      return schema;
+    }
+
+    Set<String> newNames = new HashSet<>();
     List<Schema.Field> newFields = new ArrayList<>();
-    for (Schema.Field field : oldSchema.getFields()) {
+    for (Schema.Field field : schema.getFields()) {
       String newName = changeName(field.getName(), fieldCase);
-      if (fieldNameMap.containsValue(newName)) {
+      if (!newNames.add(newName)) {
         // field name used already. indication of field names conflict. can't do anything.
         throw new IllegalStateException(String.format(
           "Duplicate field/column name %s found when trying to confirm to the chosen case option %s. " +
             "Check Database Table schema.", field.getName(), fieldCase));
       }
-      fieldNameMap.put(field.getName(), newName);
       newFields.add(Schema.Field.of(newName, field.getSchema()));
     }
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(Schema.recordOf("dbRecord", newFields));
-    for (Map.Entry<String, String> nameMap : fieldNameMap.entrySet()) {
-      recordBuilder.set(nameMap.getValue(), input.get(nameMap.getKey()));
-    }
-    return recordBuilder.build();
+    return Schema.recordOf("dbRecord", newFields);
   }
 
   private StructuredRecordUtils() {
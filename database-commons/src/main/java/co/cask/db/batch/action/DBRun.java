@@ -16,11 +16,10 @@
 
 package co.cask.db.batch.action;
 
-import co.cask.DBManager;
+import co.cask.ConnectionPool;
 
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -40,29 +39,22 @@ public class DBRun {
    * Uses a configured JDBC driver to execute a SQL statement. The configurations of which JDBC driver
    * to use and which connection string to use come from the plugin configuration.
    */
-  public void run() throws SQLException, InstantiationException, IllegalAccessException {
-    DBManager dbManager = new DBManager(config);
-
-    try {
-      dbManager.ensureJDBCDriverIsAvailable(driverClass);
-
-      try (Connection connection = getConnection()) {
+  public void run() throws SQLException {
+    try (Connection connection = getConnection()) {
+      if (!config.enableAutoCommit) {
+        connection.setAutoCommit(false);
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.execute(config.query);
         if (!config.enableAutoCommit) {
-          connection.setAutoCommit(false);
-        }
-        try (Statement statement = connection.createStatement()) {
-          statement.execute(config.query);
-          if (!config.enableAutoCommit) {
-            connection.commit();
-          }
+          connection.commit();
         }
       }
-    } finally {
-      dbManager.destroy();
     }
   }
 
   private Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(config.connectionString, config.getConnectionArguments());
+    return ConnectionPool.getInstance().getConnection(driverClass, config.connectionString,
+                                                      config.getConnectionArguments());
   }
 }
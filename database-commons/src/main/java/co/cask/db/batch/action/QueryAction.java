@@ -16,6 +16,7 @@
 
 package co.cask.db.batch.action;
 
+import co.cask.ConnectionPool;
 import co.cask.DBManager;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
@@ -58,7 +59,12 @@ public class QueryAction extends PostAction {
 
     Class<? extends Driver> driverClass = batchContext.loadPluginClass(JDBC_PLUGIN_ID);
     DBRun executeQuery = new DBRun(config, driverClass);
-    executeQuery.run();
+    try {
+      executeQuery.run();
+    } finally {
+      // the action runs once on the driver side, so its connection is not kept for later
+      ConnectionPool.getInstance().close(driverClass);
+    }
   }
 
   @Override
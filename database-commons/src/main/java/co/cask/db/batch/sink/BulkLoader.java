@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.DBRecord;
+import org.apache.hadoop.conf.Configuration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Loads records into a table with a faster mechanism than binding every record to an INSERT statement, like the
+ * native bulk load protocol of a database, for example COPY FROM STDIN for PostgreSQL, LOAD DATA LOCAL INFILE for
+ * MySQL or the bulk copy API of SQL Server.
+ * <p>
+ * {@link ETLDBOutputFormat} uses a bulk loader instead of its prepared statement if the class of the loader is set
+ * as {@link ETLDBOutputFormat#BULK_LOADER}. A new instance is created with its no-argument constructor for every
+ * task, and it is used by a single thread. The output format regularly calls {@link #flush()} and commits the
+ * transaction of the connection afterwards, so implementations must not commit or close the connection themselves.
+ */
+public interface BulkLoader {
+
+  /**
+   * Prepares the loader to load records into the given table.
+   *
+   * @param connection the connection to load the records with
+   * @param tableName the table to load the records into
+   * @param columns the columns of the table, in the order of the fields of the records
+   * @param conf the configuration of the task
+   */
+  void initialize(Connection connection, String tableName, String[] columns,
+                  Configuration conf) throws SQLException;
+
+  /**
+   * Adds a record to load. The record may be buffered until the next call to {@link #flush()}.
+   */
+  void write(DBRecord record) throws SQLException;
+
+  /**
+   * Loads all records that were written since the last flush into the table.
+   */
+  void flush() throws SQLException;
+
+  /**
+   * Releases the resources of the loader. Records that were not flushed are discarded.
+   */
+  void close() throws SQLException;
+}
@@ -16,11 +16,14 @@
 
 package co.cask.db.batch.sink;
 
+import co.cask.ConnectionConfig;
+import co.cask.ConnectionPool;
 import co.cask.DBConfig;
 import co.cask.DBManager;
 import co.cask.DBRecord;
 import co.cask.DBUtils;
 import co.cask.FieldCase;
+import co.cask.SqlDialect;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
 import co.cask.cdap.api.annotation.Name;
@@ -43,6 +46,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.lib.db.DBConfiguration;
 import org.slf4j.Logger;
@@ -50,15 +55,18 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import javax.annotation.Nullable;
 
 
@@ -73,9 +81,11 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
 
   private final DBSinkConfig dbSinkConfig;
   private final DBManager dbManager;
+  // input schemas rarely change during a run, so the projection to the columns is only computed once per schema
+  private final Map<Schema, Schema> outputSchemas = new HashMap<>();
   private Class<? extends Driver> driverClass;
-  private int[] columnTypes;
   private List<String> columns;
+  private StagingTable stagingTable;
 
   public DBSink(DBSinkConfig dbSinkConfig) {
     super(new ReferencePluginConfig(dbSinkConfig.referenceName));
@@ -90,6 +100,7 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   @Override
   public void configurePipeline(PipelineConfigurer pipelineConfigurer) {
     super.configurePipeline(pipelineConfigurer);
+    dbSinkConfig.validate(getBulkLoaderClass());
     dbManager.validateJDBCPluginPipeline(pipelineConfigurer, getJDBCPluginId());
   }
 
@@ -99,49 +110,137 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
                 "transaction isolation level: {}",
               dbSinkConfig.tableName, dbSinkConfig.jdbcPluginType, dbSinkConfig.jdbcPluginName,
               dbSinkConfig.connectionString, dbSinkConfig.columns, dbSinkConfig.transactionIsolationLevel);
+    dbSinkConfig.validate(getBulkLoaderClass());
 
     // Load the plugin class to make sure it is available.
     Class<? extends Driver> driverClass = context.loadPluginClass(getJDBCPluginId());
-    // make sure that the table exists
-    try {
+    // The table is checked and its column types are resolved with a single connection here, and passed to the tasks
+    // with the configuration of the output format, so that the tasks do not connect to the database to get them.
+    int[] columnTypes;
+    try (Connection connection = getConnection(driverClass)) {
+      // make sure that the table exists
       Preconditions.checkArgument(
-        dbManager.tableExists(driverClass, dbSinkConfig.tableName),
+        dbManager.tableExists(connection, dbSinkConfig.tableName),
         "Table %s does not exist. Please check that the 'tableName' property " +
           "has been set correctly, and that the connection string %s points to a valid database.",
         dbSinkConfig.tableName, dbSinkConfig.connectionString);
+      columnTypes = getColumnTypes(connection);
+      if (Boolean.TRUE.equals(dbSinkConfig.useStagingTable)) {
+        int maxLength = connection.getMetaData().getMaxTableNameLength();
+        String stagingTableName = StagingTable.getName(
+          dbSinkConfig.tableName, context.getLogicalStartTime(),
+          maxLength > 0 ? Math.min(maxLength, StagingTable.MAX_NAME_LENGTH) : StagingTable.MAX_NAME_LENGTH);
+        stagingTable = new StagingTable(SqlDialect.fromConnectionString(dbSinkConfig.connectionString),
+                                        dbSinkConfig.tableName, stagingTableName, dbSinkConfig.columns);
+        stagingTable.create(connection);
+        LOG.info("Writing records to the staging table {}", stagingTableName);
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException("Failed to prepare writing to table " + dbSinkConfig.tableName, e);
+    }
+    // the schema of the records lets them be deserialized, and is only known if the input schema is known
+    Schema inputSchema = context.getInputSchema();
+    Schema recordSchema = inputSchema == null ? null : getOutputSchema(inputSchema, getColumns());
+    DBOutputFormatProvider outputFormatProvider =
+      new DBOutputFormatProvider(dbSinkConfig, driverClass, getBulkLoaderClass(),
+                                 stagingTable == null ? dbSinkConfig.tableName : stagingTable.getName(), columnTypes,
+                                 recordSchema);
+    context.addOutput(Output.of(dbSinkConfig.referenceName, outputFormatProvider));
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSinkContext context) {
+    super.onRunFinish(succeeded, context);
+    Class<? extends Driver> driverClass = context.loadPluginClass(getJDBCPluginId());
+    if (stagingTable == null) {
+      // close the connections that were opened to prepare the run
+      ConnectionPool.getInstance().close(driverClass);
+      return;
+    }
+    try {
+      try (Connection connection = getConnection(driverClass)) {
+        try {
+          if (succeeded) {
+            publishStagingTable(connection);
+          }
+        } finally {
+          connection.setAutoCommit(true);
+          stagingTable.drop(connection);
+        }
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to publish the staging table " + stagingTable.getName(), e);
     } finally {
+      ConnectionPool.getInstance().close(driverClass);
       DBUtils.cleanup(driverClass);
     }
-    context.addOutput(Output.of(dbSinkConfig.referenceName, new DBOutputFormatProvider(dbSinkConfig, driverClass)));
+  }
+
+  // inserts the records of the run into the table in a single transaction
+  private void publishStagingTable(Connection connection) throws SQLException {
+    boolean autoCommit = Boolean.TRUE.equals(dbSinkConfig.getEnableAutoCommit());
+    connection.setAutoCommit(autoCommit);
+    try {
+      stagingTable.publish(connection);
+      if (!autoCommit) {
+        connection.commit();
+      }
+    } catch (SQLException e) {
+      if (!autoCommit) {
+        connection.rollback();
+      }
+      throw e;
+    }
+    LOG.info("Published the staging table {} to table {}", stagingTable.getName(), dbSinkConfig.tableName);
+  }
+
+  /**
+   * Returns the {@link BulkLoader} that loads the records into the table, or {@code null} to write the records with
+   * INSERT statements. Sinks for databases with a native bulk load mechanism can override this.
+   */
+  @Nullable
+  protected Class<? extends BulkLoader> getBulkLoaderClass() {
+    return null;
   }
 
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
     driverClass = context.loadPluginClass(getJDBCPluginId());
-    setResultSetMetadata();
+    columns = getColumns();
   }
 
   @Override
   public void transform(StructuredRecord input, Emitter<KeyValue<DBRecord, NullWritable>> emitter) throws Exception {
     // Create StructuredRecord that only has the columns in this.columns
-    List<Schema.Field> outputFields = new ArrayList<>();
-    for (String column : columns) {
-      Schema.Field field = input.getSchema().getField(column);
-      Preconditions.checkNotNull(field, "Missing schema field for column '%s'", column);
-      outputFields.add(field);
+    Schema outputSchema = outputSchemas.get(input.getSchema());
+    if (outputSchema == null) {
+      outputSchema = getOutputSchema(input.getSchema(), columns);
+      outputSchemas.put(input.getSchema(), outputSchema);
     }
-    StructuredRecord.Builder output = StructuredRecord.builder(
-      Schema.recordOf(input.getSchema().getRecordName(), outputFields));
+    StructuredRecord.Builder output = StructuredRecord.builder(outputSchema);
     for (String column : columns) {
       output.set(column, input.get(column));
     }
 
-    emitter.emit(new KeyValue<DBRecord, NullWritable>(new DBRecord(output.build(), columnTypes), null));
+    // the record is bound to the column types of the table by the output format
+    emitter.emit(new KeyValue<>(new DBRecord(output.build(), (int[]) null), null));
+  }
+
+  @VisibleForTesting
+  static Schema getOutputSchema(Schema inputSchema, List<String> columns) {
+    List<Schema.Field> outputFields = new ArrayList<>();
+    for (String column : columns) {
+      Schema.Field field = inputSchema.getField(column);
+      Preconditions.checkNotNull(field, "Missing schema field for column '%s'", column);
+      outputFields.add(field);
+    }
+    return Schema.recordOf(inputSchema.getRecordName(), outputFields);
   }
 
   @Override
   public void destroy() {
+    // the connections stay in the pool for the next tasks of the executor
     DBUtils.cleanup(driverClass);
     dbManager.destroy();
   }
@@ -149,43 +248,52 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
   @VisibleForTesting
   void setColumns(List<String> columns) {
     this.columns = ImmutableList.copyOf(columns);
+    outputSchemas.clear();
+  }
+
+  private List<String> getColumns() {
+    return ImmutableList.copyOf(Splitter.on(",").omitEmptyStrings().trimResults().split(dbSinkConfig.columns));
+  }
+
+  private Connection getConnection(Class<? extends Driver> driverClass) throws SQLException {
+    return ConnectionPool.getInstance().getConnection(driverClass, dbSinkConfig.connectionString,
+                                                      dbSinkConfig.getConnectionArguments());
   }
 
-  private void setResultSetMetadata() throws Exception {
+  /**
+   * Returns the SQL types of the columns, in the order of the configured columns.
+   */
+  private int[] getColumnTypes(Connection connection) throws SQLException {
     Map<String, Integer> columnToType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-    dbManager.ensureJDBCDriverIsAvailable(driverClass);
-
-    try (Connection connection = DriverManager.getConnection(dbSinkConfig.connectionString,
-                                                             dbSinkConfig.getConnectionArguments())) {
-      try (Statement statement = connection.createStatement();
-           // Run a query against the DB table that returns 0 records, but returns valid ResultSetMetadata
-           // that can be used to construct DBRecord objects to sink to the database table.
-           ResultSet rs = statement.executeQuery(String.format("SELECT %s FROM %s WHERE 1 = 0",
-                                                               dbSinkConfig.columns, dbSinkConfig.tableName))
-      ) {
-        ResultSetMetaData resultSetMetadata = rs.getMetaData();
-        FieldCase fieldCase = FieldCase.toFieldCase(dbSinkConfig.columnNameCase);
-        // JDBC driver column indices start with 1
-        for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
-          String name = resultSetMetadata.getColumnName(i + 1);
-          int type = resultSetMetadata.getColumnType(i + 1);
-          if (fieldCase == FieldCase.LOWER) {
-            name = name.toLowerCase();
-          } else if (fieldCase == FieldCase.UPPER) {
-            name = name.toUpperCase();
-          }
-          columnToType.put(name, type);
+    try (Statement statement = connection.createStatement();
+         // Run a query against the DB table that returns 0 records, but returns valid ResultSetMetadata
+         // that can be used to construct DBRecord objects to sink to the database table.
+         ResultSet rs = statement.executeQuery(String.format("SELECT %s FROM %s WHERE 1 = 0",
+                                                             dbSinkConfig.columns, dbSinkConfig.tableName))
+    ) {
+      ResultSetMetaData resultSetMetadata = rs.getMetaData();
+      FieldCase fieldCase = FieldCase.toFieldCase(dbSinkConfig.columnNameCase);
+      // JDBC driver column indices start with 1
+      for (int i = 0; i < rs.getMetaData().getColumnCount(); i++) {
+        String name = resultSetMetadata.getColumnName(i + 1);
+        int type = resultSetMetadata.getColumnType(i + 1);
+        if (fieldCase == FieldCase.LOWER) {
+          name = name.toLowerCase();
+        } else if (fieldCase == FieldCase.UPPER) {
+          name = name.toUpperCase();
         }
+        columnToType.put(name, type);
       }
     }
 
-    columns = ImmutableList.copyOf(Splitter.on(",").omitEmptyStrings().trimResults().split(dbSinkConfig.columns));
-    columnTypes = new int[columns.size()];
+    List<String> columns = getColumns();
+    int[] columnTypes = new int[columns.size()];
     for (int i = 0; i < columnTypes.length; i++) {
       String name = columns.get(i);
       Preconditions.checkArgument(columnToType.containsKey(name), "Missing column '%s' in SQL table", name);
       columnTypes[i] = columnToType.get(name);
     }
+    return columnTypes;
   }
 
   /**
@@ -195,6 +303,15 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
     public static final String COLUMNS = "columns";
     public static final String TABLE_NAME = "tableName";
     public static final String TRANSACTION_ISOLATION_LEVEL = "transactionIsolationLevel";
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String BATCH_BYTES = "batchBytes";
+    public static final String COMMIT_INTERVAL = "commitInterval";
+    public static final String OPERATION = "operation";
+    public static final String KEY_COLUMNS = "keyColumns";
+    public static final String ROWS_PER_INSERT = "rowsPerInsert";
+    public static final String NUM_CONNECTIONS = "numConnections";
+    public static final String USE_STAGING_TABLE = "useStagingTable";
+    public static final String ERROR_HANDLING = "errorHandling";
 
     @Name(COLUMNS)
     @Description("Comma-separated list of columns in the specified table to export to.")
@@ -214,12 +331,186 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       "and this setting is set to true. For drivers like that, this should be set to TRANSACTION_NONE.")
     @Macro
     public String transactionIsolationLevel;
+
+    @Nullable
+    @Name(BATCH_SIZE)
+    @Description("The maximum number of records that are sent to the database in a single batch. " +
+      "Defaults to 1000.")
+    @Macro
+    public Integer batchSize;
+
+    @Nullable
+    @Name(BATCH_BYTES)
+    @Description("The maximum estimated size in bytes of the records that are sent to the database in a single " +
+      "batch. The size of a record is estimated from the length of its string and bytes values. " +
+      "If not set, batches are only limited by the batch size.")
+    @Macro
+    public Long batchBytes;
+
+    @Nullable
+    @Name(COMMIT_INTERVAL)
+    @Description("If set, the transaction is committed after at least this many records have been sent to the " +
+      "database, instead of once at the end of each task. Records are committed when a batch is executed, so the " +
+      "interval is rounded up to a multiple of the batch size. Records that were committed by a task that later " +
+      "fails are written again when the task is retried, so this should be combined with the 'upsert' operation " +
+      "to avoid duplicate rows.")
+    @Macro
+    public Long commitInterval;
+
+    @Nullable
+    @Name(OPERATION)
+    @Description("How records are written to the table. 'insert' inserts every record as a new row. 'update' " +
+      "updates the row with the same values for the key columns, and ignores records without such a row. " +
+      "'upsert' updates the row with the same values for the key columns, or inserts the record if there is no " +
+      "such row, which makes writing the same records again idempotent. Defaults to 'insert'.")
+    @Macro
+    public String operation;
+
+    @Nullable
+    @Name(KEY_COLUMNS)
+    @Description("Comma-separated list of the columns that identify a row of the table. " +
+      "Required for the 'update' and 'upsert' operations.")
+    @Macro
+    public String keyColumns;
+
+    @Nullable
+    @Name(ROWS_PER_INSERT)
+    @Description("The number of records inserted by each INSERT statement, with a row of values per record. " +
+      "Many drivers send each record of a batch to the database separately, so inserting several records with " +
+      "one statement can be much faster. The number is reduced if the statement would have more than 2000 " +
+      "parameters. Only used by the 'insert' operation, and not supported by every database. Defaults to 1.")
+    @Macro
+    public Integer rowsPerInsert;
+
+    @Nullable
+    @Name(NUM_CONNECTIONS)
+    @Description("The number of connections each task writes records with, each with its own batch and thread. " +
+      "Records with the same values for the key columns are always written with the same connection, in order. " +
+      "The transactions of all connections are committed one after another at the end of the task, after the " +
+      "records of every connection have been written. This is not atomic: if one of the commits fails, the " +
+      "connections that were already committed keep their records. Defaults to 1.")
+    @Macro
+    public Integer numConnections;
+
+    @Nullable
+    @Name(USE_STAGING_TABLE)
+    @Description("Whether to write the records to a staging table first, and to insert them into the table at once " +
+      "when the run succeeds. The staging table is created at the start of the run without indexes or " +
+      "constraints, and is dropped at the end of the run. Readers of the table do not see the records of a run " +
+      "until it has succeeded, and a failed run leaves the table unchanged. Only supported by the 'insert' " +
+      "operation. Defaults to false.")
+    @Macro
+    public Boolean useStagingTable;
+
+    @Nullable
+    @Name(ERROR_HANDLING)
+    @Description("What to do with records that the database rejects, for example because they violate a " +
+      "constraint. 'fail' fails the task. 'skip' commits the other records of the batch, and skips the rejected " +
+      "records, which are logged and counted. Only data and constraint errors are skipped, other failures fail the " +
+      "task. Transient failures like deadlocks are retried when skipping. With 'skip', every batch is committed " +
+      "once it has been executed, so the commitInterval can not be set, and the connections of a task with several " +
+      "connections commit on their own. Defaults to 'fail'.")
+    @Macro
+    public String errorHandling;
+
+    @VisibleForTesting
+    void validate(@Nullable Class<? extends BulkLoader> bulkLoaderClass) {
+      if (!containsMacro(BATCH_SIZE) && batchSize != null && batchSize < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for batchSize. Must be at least 1, but got " + batchSize);
+      }
+
+      if (!containsMacro(BATCH_BYTES) && batchBytes != null && batchBytes < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for batchBytes. Must be at least 1, but got " + batchBytes);
+      }
+
+      if (!containsMacro(COMMIT_INTERVAL) && commitInterval != null && commitInterval < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for commitInterval. Must be at least 1, but got " + commitInterval);
+      }
+
+      if (!containsMacro(ROWS_PER_INSERT) && rowsPerInsert != null && rowsPerInsert < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for rowsPerInsert. Must be at least 1, but got " + rowsPerInsert);
+      }
+
+      if (!containsMacro(NUM_CONNECTIONS) && numConnections != null && numConnections < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for numConnections. Must be at least 1, but got " + numConnections);
+      }
+
+      if (!containsMacro(NUM_CONNECTIONS) && numConnections != null && !containsMacro(CONNECTION_ARGUMENTS)) {
+        Properties arguments = ConnectionConfig.getConnectionArguments(connectionArguments, null, null);
+        int maxSize = ConnectionPool.getMaxSize(arguments);
+        if (numConnections > maxSize) {
+          throw new IllegalArgumentException(String.format(
+            "Invalid value for numConnections. Must be at most %d, the maximum number of pooled connections set with " +
+              "the connection argument %s, but got %d", maxSize, ConnectionPool.MAX_SIZE, numConnections));
+        }
+      }
+
+      if (!containsMacro(OPERATION)) {
+        Operation.validate(operation);
+        Operation op = Operation.getOperation(operation);
+        if (op != Operation.INSERT && !containsMacro(KEY_COLUMNS)
+          && (keyColumns == null || keyColumns.trim().isEmpty())) {
+          throw new IllegalArgumentException(String.format(
+            "The keyColumns must be specified for the '%s' operation.", operation));
+        }
+      }
+
+      if (!containsMacro(ERROR_HANDLING)) {
+        ErrorHandling.validate(errorHandling);
+        if (ErrorHandling.getErrorHandling(errorHandling) == ErrorHandling.SKIP
+          && Boolean.TRUE.equals(getEnableAutoCommit())) {
+          throw new IllegalArgumentException("Records can not be skipped with auto-commit enabled.");
+        }
+        // every batch is committed once it has been executed when skipping records
+        if (ErrorHandling.getErrorHandling(errorHandling) == ErrorHandling.SKIP
+          && !containsMacro(COMMIT_INTERVAL) && commitInterval != null) {
+          throw new IllegalArgumentException(
+            "The commitInterval can not be set if records are skipped, since every batch is committed.");
+        }
+      }
+
+      // the bulk loader only inserts records, and it is not used if rejected records are skipped
+      if (bulkLoaderClass != null && !containsMacro(OPERATION) && Operation.getOperation(operation) != Operation.INSERT
+        && !containsMacro(ERROR_HANDLING) && ErrorHandling.getErrorHandling(errorHandling) != ErrorHandling.SKIP) {
+        throw new IllegalArgumentException(String.format(
+          "The '%s' operation can not be used with bulk loading. Use the 'insert' operation, or skip rejected records.",
+          operation));
+      }
+
+      if (!containsMacro(USE_STAGING_TABLE) && Boolean.TRUE.equals(useStagingTable)) {
+        if (!containsMacro(OPERATION) && Operation.getOperation(operation) != Operation.INSERT) {
+          throw new IllegalArgumentException("A staging table can only be used with the 'insert' operation.");
+        }
+        if (!containsMacro(CONNECTION_STRING) && connectionString.startsWith("jdbc:phoenix")) {
+          throw new IllegalArgumentException("A staging table can not be used with Phoenix.");
+        }
+      }
+
+      if (!containsMacro(KEY_COLUMNS) && !containsMacro(COLUMNS) && keyColumns != null) {
+        Set<String> columnSet = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Iterables.addAll(columnSet, Splitter.on(",").omitEmptyStrings().trimResults().split(columns));
+        for (String keyColumn : Splitter.on(",").omitEmptyStrings().trimResults().split(keyColumns)) {
+          if (!columnSet.contains(keyColumn)) {
+            throw new IllegalArgumentException(String.format(
+              "Key column '%s' must be one of the columns %s.", keyColumn, columns));
+          }
+        }
+      }
+    }
   }
 
-  private static class DBOutputFormatProvider implements OutputFormatProvider {
+  @VisibleForTesting
+  static class DBOutputFormatProvider implements OutputFormatProvider {
     private final Map<String, String> conf;
 
-    DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass) {
+    DBOutputFormatProvider(DBSinkConfig dbSinkConfig, Class<? extends Driver> driverClass,
+                           @Nullable Class<? extends BulkLoader> bulkLoaderClass, String tableName,
+                           int[] columnTypes, @Nullable Schema recordSchema) {
       this.conf = new HashMap<>();
 
       conf.put(ETLDBOutputFormat.AUTO_COMMIT_ENABLED, String.valueOf(dbSinkConfig.getEnableAutoCommit()));
@@ -237,8 +528,39 @@ public class DBSink extends ReferenceBatchSink<StructuredRecord, DBRecord, NullW
       if (dbSinkConfig.password != null) {
         conf.put(DBConfiguration.PASSWORD_PROPERTY, dbSinkConfig.password);
       }
-      conf.put(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, dbSinkConfig.tableName);
+      conf.put(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, tableName);
       conf.put(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, dbSinkConfig.columns);
+      conf.put(DBUtils.RECORD_COLUMN_TYPES, Ints.join(",", columnTypes));
+      if (recordSchema != null) {
+        conf.put(DBUtils.RECORD_SCHEMA, recordSchema.toString());
+      }
+      if (dbSinkConfig.batchSize != null) {
+        conf.put(ETLDBOutputFormat.BATCH_SIZE, String.valueOf(dbSinkConfig.batchSize));
+      }
+      if (dbSinkConfig.batchBytes != null) {
+        conf.put(ETLDBOutputFormat.BATCH_BYTES, String.valueOf(dbSinkConfig.batchBytes));
+      }
+      if (dbSinkConfig.commitInterval != null) {
+        conf.put(ETLDBOutputFormat.COMMIT_INTERVAL, String.valueOf(dbSinkConfig.commitInterval));
+      }
+      if (dbSinkConfig.operation != null) {
+        conf.put(ETLDBOutputFormat.OPERATION, dbSinkConfig.operation);
+      }
+      if (dbSinkConfig.keyColumns != null) {
+        conf.put(ETLDBOutputFormat.KEY_COLUMNS, dbSinkConfig.keyColumns);
+      }
+      if (dbSinkConfig.rowsPerInsert != null) {
+        conf.put(ETLDBOutputFormat.ROWS_PER_INSERT, String.valueOf(dbSinkConfig.rowsPerInsert));
+      }
+      if (dbSinkConfig.numConnections != null) {
+        conf.put(ETLDBOutputFormat.NUM_CONNECTIONS, String.valueOf(dbSinkConfig.numConnections));
+      }
+      if (dbSinkConfig.errorHandling != null) {
+        conf.put(ETLDBOutputFormat.ERROR_HANDLING, dbSinkConfig.errorHandling);
+      }
+      if (bulkLoaderClass != null) {
+        conf.put(ETLDBOutputFormat.BULK_LOADER, bulkLoaderClass.getName());
+      }
     }
 
     @Override
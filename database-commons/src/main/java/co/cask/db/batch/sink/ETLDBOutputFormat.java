@@ -17,18 +17,26 @@
 package co.cask.db.batch.sink;
 
 import co.cask.ConnectionConfig;
+import co.cask.ConnectionPool;
+import co.cask.DBRecord;
+import co.cask.DBRecordWritePlan;
 import co.cask.DBUtils;
-import co.cask.JDBCDriverShim;
+import co.cask.DriverConnectionFactory;
+import co.cask.SqlDialect;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
 import co.cask.db.batch.NoOpCommitConnection;
 import co.cask.db.batch.TransactionIsolationLevel;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.apache.hadoop.mapreduce.lib.db.DBOutputFormat;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,10 +44,19 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Class that extends {@link DBOutputFormat} to load the database driver class correctly.
@@ -49,15 +66,44 @@ import java.util.Properties;
  */
 public class ETLDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat<K, V> {
   public static final String AUTO_COMMIT_ENABLED = "co.cask.hydrator.db.output.autocommit.enabled";
+  public static final String BATCH_SIZE = "co.cask.hydrator.db.output.batch.size";
+  public static final String BATCH_BYTES = "co.cask.hydrator.db.output.batch.bytes";
+  public static final String COMMIT_INTERVAL = "co.cask.hydrator.db.output.commit.interval";
+  public static final String OPERATION = "co.cask.hydrator.db.output.operation";
+  public static final String KEY_COLUMNS = "co.cask.hydrator.db.output.key.columns";
+  public static final String ROWS_PER_INSERT = "co.cask.hydrator.db.output.rows.per.insert";
+  public static final String MAX_PARAMETERS = "co.cask.hydrator.db.output.max.parameters";
+  public static final String BULK_LOADER = "co.cask.hydrator.db.output.bulk.loader";
+  public static final String NUM_CONNECTIONS = "co.cask.hydrator.db.output.num.connections";
+  public static final String ERROR_HANDLING = "co.cask.hydrator.db.output.error.handling";
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  // SQL Server supports the fewest parameters per statement of the common databases, 2100
+  public static final int DEFAULT_MAX_PARAMETERS = 2000;
 
   private static final Logger LOG = LoggerFactory.getLogger(ETLDBOutputFormat.class);
+  private static final Object END_OF_RECORDS = new Object();
+
+  /**
+   * Counters reported by the output format.
+   */
+  public enum Counters {
+    /**
+     * Records that were rejected by the database and skipped.
+     */
+    REJECTED_RECORDS
+  }
+
   private Configuration conf;
-  private Driver driver;
-  private JDBCDriverShim driverShim;
+  private Counter rejectedRecords;
+  // SQL types of the columns, if they were resolved when the run was prepared
+  private int[] columnTypes;
 
   @Override
   public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context) throws IOException {
     conf = context.getConfiguration();
+    rejectedRecords = context.getCounter(Counters.REJECTED_RECORDS);
+    int[] types = conf.getInts(DBUtils.RECORD_COLUMN_TYPES);
+    columnTypes = types.length == 0 ? null : types;
     DBConfiguration dbConf = new DBConfiguration(conf);
     String tableName = dbConf.getOutputTableName();
     String[] fieldNames = dbConf.getOutputFieldNames();
@@ -67,105 +113,575 @@ public class ETLDBOutputFormat<K extends DBWritable, V> extends DBOutputFormat<K
     }
 
     try {
-      Connection connection = getConnection(conf);
-      PreparedStatement statement = connection.prepareStatement(constructQuery(tableName, fieldNames));
-      return new DBRecordWriter(connection, statement) {
-
-        private boolean emptyData = true;
-
-        //Implementation of the close method below is the exact implementation in DBOutputFormat except that
-        //we check if there is any data to be written and if not, we skip executeBatch call.
-        //There might be reducers that don't receive any data and thus this check is necessary to prevent
-        //empty data to be committed (since some Databases doesn't support that).
-        @Override
-        public void close(TaskAttemptContext context) throws IOException {
+      Class<? extends BulkLoader> bulkLoaderClass = conf.getClass(BULK_LOADER, null, BulkLoader.class);
+      // rejected records can only be isolated with statements
+      if (bulkLoaderClass != null
+        && ErrorHandling.getErrorHandling(conf.get(ERROR_HANDLING)) != ErrorHandling.SKIP) {
+        Connection connection = getConnections(conf, 1).get(0);
+        BulkLoader bulkLoader = ReflectionUtils.newInstance(bulkLoaderClass, conf);
+        bulkLoader.initialize(connection, tableName, fieldNames, conf);
+        LOG.debug("Loading records with {}", bulkLoaderClass.getName());
+        return new BulkLoadRecordWriter(connection, bulkLoader);
+      }
+      int numConnections = Math.max(1, conf.getInt(NUM_CONNECTIONS, 1));
+      // the connections are borrowed together, so that tasks waiting for connections do not deadlock
+      List<Connection> connections = getConnections(conf, numConnections);
+      if (numConnections == 1) {
+        return createStatementWriter(connections.get(0), tableName, fieldNames);
+      }
+      List<ETLDBRecordWriter> writers = new ArrayList<>(numConnections);
+      try {
+        for (Connection connection : connections) {
+          writers.add(createStatementWriter(connection, tableName, fieldNames));
+        }
+      } catch (SQLException | RuntimeException e) {
+        // release the connections of the writers that were created, and the connections that were not used yet
+        for (ETLDBRecordWriter writer : writers) {
           try {
-            if (!emptyData) {
-              getStatement().executeBatch();
-              getConnection().commit();
-            }
-          } catch (SQLException e) {
-            try {
-              getConnection().rollback();
-            } catch (SQLException ex) {
-              LOG.warn(StringUtils.stringifyException(ex));
-            }
-            throw new IOException(e);
-          } finally {
-            try {
-              getStatement().close();
-              getConnection().close();
-            } catch (SQLException ex) {
-              throw new IOException(ex);
-            }
+            writer.release();
+          } catch (IOException ex) {
+            e.addSuppressed(ex);
           }
-
+        }
+        for (Connection connection : connections.subList(writers.size() + 1, connections.size())) {
           try {
-            DriverManager.deregisterDriver(driverShim);
-          } catch (SQLException e) {
-            throw new IOException(e);
+            connection.close();
+          } catch (SQLException ex) {
+            e.addSuppressed(ex);
           }
         }
-
-        @Override
-        public void write(K key, V value) throws IOException {
-          super.write(key, value);
-          emptyData = false;
-        }
-      };
+        throw e;
+      }
+      LOG.debug("Writing records with {} connections", numConnections);
+      return new ParallelRecordWriter(writers, getKeyFields(fieldNames));
     } catch (Exception ex) {
       throw Throwables.propagate(ex);
     }
   }
 
-  private Connection getConnection(Configuration conf) {
-    Connection connection;
+  // creates a writer with the given connection, or closes the connection if the writer can not be created
+  private ETLDBRecordWriter createStatementWriter(Connection connection, String tableName,
+                                                  String[] fieldNames) throws SQLException {
+    PreparedStatement statement = null;
     try {
-      String url = conf.get(DBConfiguration.URL_PROPERTY);
+      int rowsPerStatement = getRowsPerStatement(fieldNames.length);
+      WriteQuery writeQuery = createWriteQuery(tableName, fieldNames, rowsPerStatement);
+      statement = connection.prepareStatement(writeQuery.getQuery());
+      MultiRowInsertBulkLoader insertLoader = rowsPerStatement > 1
+        ? new MultiRowInsertBulkLoader(connection, statement, tableName, fieldNames, rowsPerStatement) : null;
+      return new ETLDBRecordWriter(connection, statement, writeQuery.getParameterFields(), insertLoader,
+                                   rowsPerStatement);
+    } catch (SQLException | RuntimeException e) {
+      if (statement != null) {
+        statement.close();
+      }
+      connection.close();
+      throw e;
+    }
+  }
+
+  // returns the indexes of the fields of the key columns, or null if there are no key columns
+  @Nullable
+  private int[] getKeyFields(String[] fieldNames) {
+    String[] keyColumns = conf.getTrimmedStrings(KEY_COLUMNS);
+    if (keyColumns.length == 0) {
+      return null;
+    }
+    int[] keyFields = new int[keyColumns.length];
+    for (int i = 0; i < keyColumns.length; i++) {
+      keyFields[i] = -1;
+      for (int j = 0; j < fieldNames.length; j++) {
+        if (keyColumns[i].equalsIgnoreCase(fieldNames[j] == null ? null : fieldNames[j].trim())) {
+          keyFields[i] = j;
+        }
+      }
+      Preconditions.checkArgument(keyFields[i] >= 0, "Key column '%s' must be one of the columns.", keyColumns[i]);
+    }
+    return keyFields;
+  }
+
+  /**
+   * Binds a record to the plan to write records with its schema to the columns of the table, if the types of the
+   * columns are known. The plans are cached by each record writer, since they are only used by its thread.
+   */
+  @SuppressWarnings("unchecked")
+  private K bind(K key, Map<Schema, DBRecordWritePlan> writePlans) {
+    if (columnTypes == null || !(key instanceof DBRecord)) {
+      return key;
+    }
+    StructuredRecord record = ((DBRecord) key).getRecord();
+    DBRecordWritePlan writePlan = writePlans.get(record.getSchema());
+    if (writePlan == null) {
+      writePlan = DBRecordWritePlan.create(record.getSchema(), columnTypes);
+      writePlans.put(record.getSchema(), writePlan);
+    }
+    return (K) new DBRecord(record, writePlan);
+  }
+
+  /**
+   * Returns the number of records inserted by each statement, limited so that the statement does not have more
+   * parameters than drivers support.
+   */
+  private int getRowsPerStatement(int fieldCount) {
+    int rowsPerInsert = conf.getInt(ROWS_PER_INSERT, 1);
+    if (rowsPerInsert <= 1 || fieldCount == 0
+      || Operation.getOperation(conf.get(OPERATION)) != Operation.INSERT
+      // rejected records are isolated by executing one record per statement
+      || ErrorHandling.getErrorHandling(conf.get(ERROR_HANDLING)) == ErrorHandling.SKIP
+      || conf.get(DBConfiguration.URL_PROPERTY).startsWith("jdbc:phoenix")) {
+      return 1;
+    }
+    int maxParameters = conf.getInt(MAX_PARAMETERS, DEFAULT_MAX_PARAMETERS);
+    return MultiRowInsertBulkLoader.getRowsPerStatement(rowsPerInsert, maxParameters, fieldCount);
+  }
+
+  /**
+   * Record writer that executes the batch of its statement regularly, and that inserts several records with each
+   * statement with a {@link MultiRowInsertBulkLoader} if configured.
+   */
+  private class ETLDBRecordWriter extends DBRecordWriter {
+    private final int[] parameterFields;
+    // inserts the records if several records are inserted per statement
+    private final MultiRowInsertBulkLoader insertLoader;
+    private final int rowsPerStatement;
+    private final int batchSize;
+    private final long batchBytes;
+    private final long commitInterval;
+    // executes the batches if rejected records are skipped, in which case the records are only bound when executed
+    private final RejectingBatchExecutor rejectingExecutor;
+    private final List<DBRecord> batchRecords;
+    private final Map<Schema, DBRecordWritePlan> writePlans;
+
+    private boolean emptyData = true;
+    // records and estimated bytes added to the batch of the statement since it was last executed
+    private int batchedRecords;
+    private long batchedBytes;
+    // records executed since the transaction was last committed
+    private long uncommittedRecords;
+
+    ETLDBRecordWriter(Connection connection, PreparedStatement statement, @Nullable int[] parameterFields,
+                      @Nullable MultiRowInsertBulkLoader insertLoader, int rowsPerStatement) throws SQLException {
+      super(connection, statement);
+      this.parameterFields = parameterFields;
+      this.insertLoader = insertLoader;
+      this.rowsPerStatement = rowsPerStatement;
+      this.batchSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+      this.batchBytes = conf.getLong(BATCH_BYTES, 0L);
+      this.commitInterval = conf.getLong(COMMIT_INTERVAL, 0L);
+      this.writePlans = new HashMap<>();
+      if (ErrorHandling.getErrorHandling(conf.get(ERROR_HANDLING)) == ErrorHandling.SKIP) {
+        this.rejectingExecutor = new RejectingBatchExecutor(connection, statement, parameterFields, rejectedRecords);
+        this.batchRecords = new ArrayList<>();
+      } else {
+        this.rejectingExecutor = null;
+        this.batchRecords = null;
+      }
+    }
+
+    //Implementation of the close method below is the exact implementation in DBOutputFormat except that
+    //we check if there is any data to be written and if not, we skip executeBatch call.
+    //There might be reducers that don't receive any data and thus this check is necessary to prevent
+    //empty data to be committed (since some Databases doesn't support that).
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        flush();
+        commit();
+      } catch (SQLException e) {
+        rollback();
+        throw new IOException(e);
+      } finally {
+        release();
+      }
+    }
+
+    // executes the records that were not executed yet
+    void flush() throws SQLException {
+      if (batchedRecords > 0 || (insertLoader != null && insertLoader.hasPendingRows())) {
+        executeBatch();
+        batchedRecords = 0;
+        batchedBytes = 0;
+      }
+    }
+
+    // executes the batch, and inserts the records that do not fill a statement if several are inserted per statement
+    private void executeBatch() throws SQLException {
+      if (insertLoader != null) {
+        insertLoader.flush();
+      } else if (rejectingExecutor == null) {
+        getStatement().executeBatch();
+      } else {
+        rejectingExecutor.execute(batchRecords);
+        batchRecords.clear();
+      }
+    }
+
+    void commit() throws SQLException {
+      if (!emptyData) {
+        getConnection().commit();
+      }
+    }
+
+    void rollback() {
+      try {
+        getConnection().rollback();
+      } catch (SQLException ex) {
+        LOG.warn(StringUtils.stringifyException(ex));
+      }
+    }
+
+    void release() throws IOException {
+      try {
+        getStatement().close();
+        getConnection().close();
+      } catch (SQLException ex) {
+        throw new IOException(ex);
+      }
+    }
+
+    @Override
+    public void write(K key, V value) throws IOException {
+      K record = bind(key, writePlans);
+      try {
+        if (rejectingExecutor != null) {
+          batchRecords.add((DBRecord) record);
+        } else if (insertLoader != null) {
+          insertLoader.write((DBRecord) record);
+        } else if (parameterFields == null) {
+          record.write(getStatement());
+          getStatement().addBatch();
+        } else {
+          ((DBRecord) record).write(getStatement(), parameterFields);
+          getStatement().addBatch();
+        }
+      } catch (SQLException e) {
+        throw new IOException(e);
+      }
+      emptyData = false;
+      if (batchBytes > 0 && record instanceof DBRecord) {
+        batchedBytes += ((DBRecord) record).getEstimatedSize();
+      }
+      if (insertLoader != null && insertLoader.hasPendingRows()) {
+        // the records are only added to the batch once there are enough of them for the statement
+        return;
+      }
+      batchedRecords += rowsPerStatement;
+      // execute the batch regularly, so that the driver does not buffer all records of the task
+      if (batchedRecords >= batchSize || (batchBytes > 0 && batchedBytes >= batchBytes)) {
+        try {
+          executeBatch();
+          uncommittedRecords += batchedRecords;
+          // commit regularly if configured, so that a failed task keeps the records that were committed
+          if (commitInterval > 0 && uncommittedRecords >= commitInterval) {
+            getConnection().commit();
+            uncommittedRecords = 0;
+          }
+        } catch (SQLException e) {
+          throw new IOException(e);
+        }
+        batchedRecords = 0;
+        batchedBytes = 0;
+      }
+    }
+  }
+
+  /**
+   * Record writer that spreads the records over several {@link ETLDBRecordWriter}s, each with its own connection,
+   * batch and thread. Records with the same values for the key columns are written by the same writer, in the order
+   * they were received, and records are distributed round-robin if there are no key columns. The transactions of the
+   * connections are only committed at the end, after the records of every writer have been executed.
+   * <p>
+   * The transactions are committed one after another, so writing with several connections is not atomic: if
+   * committing one of them fails, the transactions that were already committed keep their records, and only the
+   * others are rolled back.
+   */
+  private class ParallelRecordWriter extends RecordWriter<K, V> {
+    private final List<ETLDBRecordWriter> writers;
+    private final int[] keyFields;
+    private final List<BlockingQueue<Object>> queues;
+    private final List<Thread> threads;
+    // the first failure of any of the writers
+    private final AtomicReference<Throwable> failure;
+    private int nextWriter;
+
+    ParallelRecordWriter(List<ETLDBRecordWriter> writers, @Nullable int[] keyFields) {
+      this.writers = writers;
+      this.keyFields = keyFields;
+      this.queues = new ArrayList<>(writers.size());
+      this.threads = new ArrayList<>(writers.size());
+      this.failure = new AtomicReference<>();
+      int queueSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+      for (int i = 0; i < writers.size(); i++) {
+        ETLDBRecordWriter writer = writers.get(i);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueSize);
+        Thread thread = new Thread(() -> writeRecords(writer, queue), "db-record-writer-" + i);
+        thread.setDaemon(true);
+        thread.start();
+        queues.add(queue);
+        threads.add(thread);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeRecords(ETLDBRecordWriter writer, BlockingQueue<Object> queue) {
+      try {
+        Object record;
+        while ((record = queue.take()) != END_OF_RECORDS) {
+          // after a failure the remaining records are only taken from the queue, so that write() does not block
+          if (failure.get() == null) {
+            try {
+              writer.write((K) record, null);
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            }
+          }
+        }
+        if (failure.get() == null) {
+          writer.flush();
+        }
+      } catch (InterruptedException e) {
+        failure.compareAndSet(null, e);
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    }
+
+    @Override
+    public void write(K key, V value) throws IOException {
+      checkFailure();
+      int writer;
+      if (keyFields == null) {
+        writer = nextWriter;
+        nextWriter = (nextWriter + 1) % queues.size();
+      } else {
+        writer = (getKeyHash((DBRecord) key) & Integer.MAX_VALUE) % queues.size();
+      }
+      try {
+        queues.get(writer).put(key);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while writing a record.", e);
+      }
+    }
+
+    private int getKeyHash(DBRecord record) {
+      List<Schema.Field> fields = record.getRecord().getSchema().getFields();
+      int hash = 1;
+      for (int keyField : keyFields) {
+        Object value = record.getRecord().get(fields.get(keyField).getName());
+        hash = 31 * hash + (value instanceof byte[] ? Arrays.hashCode((byte[]) value) : Objects.hashCode(value));
+      }
+      return hash;
+    }
+
+    private void checkFailure() throws IOException {
+      Throwable t = failure.get();
+      if (t != null) {
+        throw new IOException("Failed to write records to the database.", t);
+      }
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
       try {
-        // throws SQLException if no suitable driver is found
-        DriverManager.getDriver(url);
+        for (BlockingQueue<Object> queue : queues) {
+          queue.put(END_OF_RECORDS);
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        checkFailure();
+        for (ETLDBRecordWriter writer : writers) {
+          writer.commit();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        rollback();
+        throw new IOException("Interrupted while waiting for the records to be written.", e);
       } catch (SQLException e) {
-        if (driverShim == null) {
-          if (driver == null) {
-            ClassLoader classLoader = conf.getClassLoader();
-            @SuppressWarnings("unchecked")
-            Class<? extends Driver> driverClass =
-              (Class<? extends Driver>) classLoader.loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
-            driver = driverClass.newInstance();
-
-            // De-register the default driver that gets registered when driver class is loaded.
-            DBUtils.deregisterAllDrivers(driverClass);
+        rollback();
+        throw new IOException(e);
+      } catch (IOException e) {
+        rollback();
+        throw e;
+      } finally {
+        release();
+      }
+    }
+
+    private void rollback() {
+      for (ETLDBRecordWriter writer : writers) {
+        writer.rollback();
+      }
+    }
+
+    // releases the connections of all writers, even if releasing one of them fails
+    private void release() throws IOException {
+      IOException exception = null;
+      for (ETLDBRecordWriter writer : writers) {
+        try {
+          writer.release();
+        } catch (IOException e) {
+          if (exception == null) {
+            exception = e;
+          } else {
+            exception.addSuppressed(e);
+          }
+        }
+      }
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
+
+  /**
+   * Record writer that loads records with a {@link BulkLoader}, flushing the loader as often as the batch of the
+   * statement would be executed.
+   */
+  private class BulkLoadRecordWriter extends RecordWriter<K, V> {
+    private final Connection connection;
+    private final BulkLoader bulkLoader;
+    private final int batchSize;
+    private final long batchBytes;
+    private final long commitInterval;
+    private final Map<Schema, DBRecordWritePlan> writePlans;
+
+    private boolean emptyData = true;
+    // records and estimated bytes written to the loader since it was last flushed
+    private int bufferedRecords;
+    private long bufferedBytes;
+    // records flushed since the transaction was last committed
+    private long uncommittedRecords;
+
+    BulkLoadRecordWriter(Connection connection, BulkLoader bulkLoader) {
+      this.connection = connection;
+      this.bulkLoader = bulkLoader;
+      this.batchSize = conf.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+      this.batchBytes = conf.getLong(BATCH_BYTES, 0L);
+      this.commitInterval = conf.getLong(COMMIT_INTERVAL, 0L);
+      this.writePlans = new HashMap<>();
+    }
+
+    @Override
+    public void write(K key, V value) throws IOException {
+      DBRecord record = (DBRecord) bind(key, writePlans);
+      try {
+        bulkLoader.write(record);
+        emptyData = false;
+        bufferedRecords++;
+        if (batchBytes > 0) {
+          bufferedBytes += record.getEstimatedSize();
+        }
+        if (bufferedRecords >= batchSize || (batchBytes > 0 && bufferedBytes >= batchBytes)) {
+          bulkLoader.flush();
+          uncommittedRecords += bufferedRecords;
+          bufferedRecords = 0;
+          bufferedBytes = 0;
+          if (commitInterval > 0 && uncommittedRecords >= commitInterval) {
+            connection.commit();
+            uncommittedRecords = 0;
           }
+        }
+      } catch (SQLException e) {
+        throw new IOException(e);
+      }
+    }
 
-          driverShim = new JDBCDriverShim(driver);
-          DriverManager.registerDriver(driverShim);
-          LOG.debug("Registered JDBC driver via shim {}. Actual Driver {}.", driverShim, driver);
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        if (!emptyData) {
+          bulkLoader.flush();
+          connection.commit();
+        }
+      } catch (SQLException e) {
+        try {
+          connection.rollback();
+        } catch (SQLException ex) {
+          LOG.warn(StringUtils.stringifyException(ex));
+        }
+        throw new IOException(e);
+      } finally {
+        try {
+          bulkLoader.close();
+          connection.close();
+        } catch (SQLException ex) {
+          throw new IOException(ex);
         }
       }
+    }
+  }
 
+  private WriteQuery createWriteQuery(String tableName, String[] fieldNames, int rowsPerStatement) {
+    Operation operation = Operation.getOperation(conf.get(OPERATION));
+    SqlDialect dialect = SqlDialect.fromConnectionString(conf.get(DBConfiguration.URL_PROPERTY));
+    if (operation == Operation.UPDATE) {
+      Preconditions.checkArgument(dialect != SqlDialect.PHOENIX, "Phoenix does not support updating records.");
+      WriteQuery writeQuery = WriteQuery.update(tableName, fieldNames, conf.getTrimmedStrings(KEY_COLUMNS));
+      LOG.debug("Updating records with query {}", writeQuery.getQuery());
+      return writeQuery;
+    }
+    // Phoenix only supports UPSERT, which also updates existing rows with the same primary key
+    if (operation == Operation.UPSERT && dialect != SqlDialect.PHOENIX) {
+      WriteQuery writeQuery = WriteQuery.upsert(dialect, tableName, fieldNames, conf.getTrimmedStrings(KEY_COLUMNS));
+      LOG.debug("Upserting records with query {}", writeQuery.getQuery());
+      return writeQuery;
+    }
+    if (rowsPerStatement > 1) {
+      LOG.debug("Inserting {} records with each statement", rowsPerStatement);
+      return WriteQuery.insert(tableName, fieldNames, rowsPerStatement);
+    }
+    return new WriteQuery(constructQuery(tableName, fieldNames), null);
+  }
+
+  // borrows the given number of connections together, and prepares them for writing
+  private List<Connection> getConnections(Configuration conf, int count) {
+    List<Connection> connections;
+    try {
+      String url = conf.get(DBConfiguration.URL_PROPERTY);
+      Class<? extends Driver> driverClass = DriverConnectionFactory.loadDriverClass(conf);
       Properties properties =
         ConnectionConfig.getConnectionArguments(conf.get(DBUtils.CONNECTION_ARGUMENTS),
                                                 conf.get(DBConfiguration.USERNAME_PROPERTY),
                                                 conf.get(DBConfiguration.PASSWORD_PROPERTY));
-      connection = DriverManager.getConnection(url, properties);
-
-      boolean autoCommitEnabled = conf.getBoolean(AUTO_COMMIT_ENABLED, false);
-      if (autoCommitEnabled) {
-        // hack to work around jdbc drivers like the hive driver that throw exceptions on commit
-        connection = new NoOpCommitConnection(connection);
-      } else {
-        connection.setAutoCommit(false);
+      connections = ConnectionPool.getInstance().getConnections(driverClass, url, properties, count);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+    List<Connection> prepared = new ArrayList<>(count);
+    try {
+      for (Connection connection : connections) {
+        prepared.add(prepare(conf, connection));
       }
-      String level = conf.get(TransactionIsolationLevel.CONF_KEY);
-      LOG.debug("Transaction isolation level: {}", level);
-      connection.setTransactionIsolation(TransactionIsolationLevel.getLevel(level));
     } catch (Exception e) {
+      for (Connection connection : connections) {
+        try {
+          connection.close();
+        } catch (SQLException ex) {
+          e.addSuppressed(ex);
+        }
+      }
       throw Throwables.propagate(e);
     }
+    return prepared;
+  }
+
+  private Connection prepare(Configuration conf, Connection connection) throws SQLException {
+    boolean autoCommitEnabled = conf.getBoolean(AUTO_COMMIT_ENABLED, false);
+    if (autoCommitEnabled) {
+      // hack to work around jdbc drivers like the hive driver that throw exceptions on commit
+      connection = new NoOpCommitConnection(connection);
+    } else {
+      connection.setAutoCommit(false);
+    }
+    String level = conf.get(TransactionIsolationLevel.CONF_KEY);
+    LOG.debug("Transaction isolation level: {}", level);
+    connection.setTransactionIsolation(TransactionIsolationLevel.getLevel(level));
     return connection;
   }
 
+
   @Override
   public String constructQuery(String table, String[] fieldNames) {
     String query = super.constructQuery(table, fieldNames);
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * What the database sink does with records that the database rejects.
+ *
+ * @see RejectingBatchExecutor
+ */
+public enum ErrorHandling {
+  /**
+   * Fail the task, rolling back the records that were not committed.
+   */
+  FAIL,
+  /**
+   * Commit the other records of the batch, and skip the rejected records.
+   */
+  SKIP;
+
+  /**
+   * Translates an error handling string to the corresponding value. Defaults to {@link #FAIL} if the given input is
+   * {@code null}.
+   */
+  public static ErrorHandling getErrorHandling(@Nullable String errorHandling) {
+    if (errorHandling == null) {
+      return FAIL;
+    }
+    return valueOf(errorHandling.toUpperCase());
+  }
+
+  /**
+   * Validates that the given error handling is either null or one of the possible values.
+   *
+   * @param errorHandling the error handling to check
+   */
+  public static void validate(@Nullable String errorHandling) {
+    try {
+      getErrorHandling(errorHandling);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format(
+        "Error handling must be one of the following values: %s, but got: %s.", Arrays.toString(values()),
+        errorHandling));
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.DBRecord;
+import org.apache.hadoop.conf.Configuration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generic {@link BulkLoader} for databases without a supported native bulk load mechanism. It inserts several
+ * records with each INSERT statement, with a row of values per record, and executes the statements in a batch.
+ * The number of records per statement is {@link ETLDBOutputFormat#ROWS_PER_INSERT}, limited so that a statement
+ * does not have more than {@link ETLDBOutputFormat#MAX_PARAMETERS} parameters.
+ * <p>
+ * The record writer of {@link ETLDBOutputFormat} also inserts records with this loader if it inserts several records
+ * per statement.
+ */
+public class MultiRowInsertBulkLoader implements BulkLoader {
+  static final int DEFAULT_ROWS_PER_STATEMENT = 100;
+
+  private Connection connection;
+  private String tableName;
+  private String[] columns;
+  private int rowsPerStatement;
+  private PreparedStatement statement;
+  private List<DBRecord> pendingRows;
+  private boolean batched;
+
+  public MultiRowInsertBulkLoader() {
+  }
+
+  /**
+   * Creates a loader that inserts the given number of records with the given statement, which inserts that many
+   * rows into the table.
+   */
+  MultiRowInsertBulkLoader(Connection connection, PreparedStatement statement, String tableName, String[] columns,
+                           int rowsPerStatement) {
+    this.connection = connection;
+    this.statement = statement;
+    this.tableName = tableName;
+    this.columns = columns;
+    this.rowsPerStatement = rowsPerStatement;
+    this.pendingRows = new ArrayList<>(rowsPerStatement);
+  }
+
+  /**
+   * Returns the number of records inserted by each statement, limited so that the statement does not have more
+   * parameters than the given maximum.
+   */
+  static int getRowsPerStatement(int rowsPerInsert, int maxParameters, int columnCount) {
+    return Math.max(1, Math.min(rowsPerInsert, maxParameters / Math.max(1, columnCount)));
+  }
+
+  @Override
+  public void initialize(Connection connection, String tableName, String[] columns,
+                         Configuration conf) throws SQLException {
+    this.connection = connection;
+    this.tableName = tableName;
+    this.columns = columns;
+    this.rowsPerStatement = getRowsPerStatement(
+      conf.getInt(ETLDBOutputFormat.ROWS_PER_INSERT, DEFAULT_ROWS_PER_STATEMENT),
+      conf.getInt(ETLDBOutputFormat.MAX_PARAMETERS, ETLDBOutputFormat.DEFAULT_MAX_PARAMETERS), columns.length);
+    this.statement = connection.prepareStatement(WriteQuery.insert(tableName, columns, rowsPerStatement).getQuery());
+    this.pendingRows = new ArrayList<>(rowsPerStatement);
+  }
+
+  @Override
+  public void write(DBRecord record) throws SQLException {
+    pendingRows.add(record);
+    if (pendingRows.size() == rowsPerStatement) {
+      bindPendingRows(statement);
+      statement.addBatch();
+      batched = true;
+    }
+  }
+
+  /**
+   * Returns whether there are records that do not fill a statement yet.
+   */
+  boolean hasPendingRows() {
+    return !pendingRows.isEmpty();
+  }
+
+  @Override
+  public void flush() throws SQLException {
+    if (batched) {
+      statement.executeBatch();
+      batched = false;
+    }
+    if (!pendingRows.isEmpty()) {
+      // the remaining records are inserted with a statement that has just enough rows for them
+      String query = WriteQuery.insert(tableName, columns, pendingRows.size()).getQuery();
+      try (PreparedStatement tailStatement = connection.prepareStatement(query)) {
+        bindPendingRows(tailStatement);
+        tailStatement.executeUpdate();
+      }
+    }
+  }
+
+  private void bindPendingRows(PreparedStatement stmt) throws SQLException {
+    for (int i = 0; i < pendingRows.size(); i++) {
+      pendingRows.get(i).write(stmt, i * columns.length);
+    }
+    pendingRows.clear();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (statement != null) {
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.sink;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Operation used by the database sink to write records to the table.
+ */
+public enum Operation {
+  /**
+   * Inserts every record as a new row.
+   */
+  INSERT,
+  /**
+   * Updates the row with the same key columns as the record. Records without such a row are ignored.
+   */
+  UPDATE,
+  /**
+   * Updates the row with the same key columns as the record, or inserts the record if there is no such row.
+   */
+  UPSERT;
+
+  /**
+   * Translates an operation string to the corresponding operation. Defaults to {@link #INSERT} if the given input
+   * is {@code null}.
+   */
+  public static Operation getOperation(@Nullable String operation) {
+    if (operation == null) {
+      return INSERT;
+    }
+    return valueOf(operation.toUpperCase());
+  }
+
+  /**
+   * Validates that the given operation is either null or one of the possible operations.
+   *
+   * @param operation the operation to check
+   */
+  public static void validate(@Nullable String operation) {
+    try {
+      getOperation(operation);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format(
+        "Operation must be one of the following values: %s, but got: %s.", Arrays.toString(values()), operation));
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.DBRecord;
+import org.apache.hadoop.mapreduce.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Executes batches of records and commits them, skipping the records that the database rejects instead of failing
+ * the whole batch.
+ * <p>
+ * If a batch fails, it is rolled back and the rejected record is isolated. When the update counts of the
+ * {@link BatchUpdateException} show which record failed, that record is skipped and the records before and after
+ * it are executed again. Otherwise the batch is split in halves until the failing records are found. Skipped records
+ * are logged with their error and counted. Only data and constraint errors are treated as rejected records, other
+ * failures, like a missing column, a missing permission or a lost connection, would reject every record, so they are
+ * propagated instead.
+ * <p>
+ * Transient failures, like deadlocks or serialization failures, are not caused by the records, so the batch is
+ * retried with an exponential backoff instead. The failure is propagated once the retries are exhausted.
+ * <p>
+ * Every batch is committed once it has been executed, so that the records that were not rejected are kept when a
+ * later batch is rolled back.
+ */
+final class RejectingBatchExecutor {
+  private static final Logger LOG = LoggerFactory.getLogger(RejectingBatchExecutor.class);
+  static final int MAX_RETRIES = 5;
+  static final long INITIAL_BACKOFF_MILLIS = 100L;
+
+  private final Connection connection;
+  private final PreparedStatement statement;
+  private final int[] parameterFields;
+  private final Counter rejectedRecords;
+
+  /**
+   * @param connection the connection, which must not be in auto-commit mode
+   * @param statement the statement that writes a single record
+   * @param parameterFields the fields bound to the parameters of the statement, or {@code null} for all fields in
+   *                        order
+   * @param rejectedRecords the counter of the skipped records
+   */
+  RejectingBatchExecutor(Connection connection, PreparedStatement statement, @Nullable int[] parameterFields,
+                         Counter rejectedRecords) {
+    this.connection = connection;
+    this.statement = statement;
+    this.parameterFields = parameterFields;
+    this.rejectedRecords = rejectedRecords;
+  }
+
+  /**
+   * Executes and commits the given records, skipping the records that are rejected by the database.
+   *
+   * @return the number of records that were skipped
+   * @throws SQLException if the records failed for a reason other than their data, or if a transient failure
+   *                      persists after the retries
+   */
+  int execute(List<DBRecord> records) throws SQLException {
+    int rejected = 0;
+    Deque<List<DBRecord>> chunks = new ArrayDeque<>();
+    chunks.push(records);
+    while (!chunks.isEmpty()) {
+      List<DBRecord> chunk = chunks.pop();
+      SQLException failure = executeWithRetries(chunk);
+      if (failure == null) {
+        continue;
+      }
+      int failed = chunk.size() == 1 ? 0 : getFailedRecord(failure, chunk.size());
+      if (failed >= 0) {
+        reject(chunk.get(failed), failure);
+        rejected++;
+        // the records before the failed one are executed first, to keep the order of the records
+        pushIfNotEmpty(chunks, chunk.subList(failed + 1, chunk.size()));
+        pushIfNotEmpty(chunks, chunk.subList(0, failed));
+      } else {
+        int half = chunk.size() / 2;
+        chunks.push(chunk.subList(half, chunk.size()));
+        chunks.push(chunk.subList(0, half));
+      }
+    }
+    return rejected;
+  }
+
+  /**
+   * Executes and commits the records, retrying transient failures.
+   *
+   * @return the failure if the records were rejected, or {@code null} if they were committed
+   * @throws SQLException if the records failed for a reason other than their data
+   */
+  @Nullable
+  private SQLException executeWithRetries(List<DBRecord> records) throws SQLException {
+    long backoff = INITIAL_BACKOFF_MILLIS;
+    int retries = 0;
+    while (true) {
+      try {
+        for (DBRecord record : records) {
+          if (parameterFields == null) {
+            record.write(statement);
+          } else {
+            record.write(statement, parameterFields);
+          }
+          statement.addBatch();
+        }
+        statement.executeBatch();
+        connection.commit();
+        return null;
+      } catch (SQLException e) {
+        statement.clearBatch();
+        connection.rollback();
+        if (isRejection(e, records.size())) {
+          return e;
+        }
+        if (!isTransient(e)) {
+          throw e;
+        }
+        if (retries++ >= MAX_RETRIES) {
+          throw e;
+        }
+        LOG.warn("Transient failure while writing {} records. Retrying in {} ms.", records.size(), backoff, e);
+        sleep(backoff, e);
+        backoff *= 2;
+      }
+    }
+  }
+
+  private static void sleep(long millis, SQLException failure) throws SQLException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw failure;
+    }
+  }
+
+  private void reject(DBRecord record, SQLException failure) {
+    LOG.warn("Skipping record {} rejected by the database: {}", record.getRecord(), getMessage(failure));
+    rejectedRecords.increment(1);
+  }
+
+  private static void pushIfNotEmpty(Deque<List<DBRecord>> chunks, List<DBRecord> chunk) {
+    if (!chunk.isEmpty()) {
+      chunks.push(chunk);
+    }
+  }
+
+  /**
+   * Returns the index of a record that failed according to the update counts of the failure, or -1 if the update
+   * counts do not show it. Drivers either stop at the first failed record, returning the update counts of the
+   * records before it, or continue and mark the failed records with {@link Statement#EXECUTE_FAILED}.
+   */
+  static int getFailedRecord(SQLException failure, int records) {
+    if (!(failure instanceof BatchUpdateException)) {
+      return -1;
+    }
+    int[] updateCounts = ((BatchUpdateException) failure).getUpdateCounts();
+    if (updateCounts == null) {
+      return -1;
+    }
+    if (updateCounts.length < records) {
+      return updateCounts.length;
+    }
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns whether the failure was caused by the data of some of the records, so that the other records can be
+   * written without them. This is the case for {@link SQLDataException}s and
+   * {@link SQLIntegrityConstraintViolationException}s, and for the SQL states of class 22, data exception, and 23,
+   * integrity constraint violation. If the driver does not report a SQL state, the failure is a rejection if the
+   * update counts of a {@link BatchUpdateException} show a failed record.
+   */
+  static boolean isRejection(SQLException failure, int records) {
+    boolean hasSqlState = false;
+    for (SQLException e = failure; e != null; e = e.getNextException()) {
+      if (isDataError(e) || isDataError(e.getCause())) {
+        return true;
+      }
+      hasSqlState |= e.getSQLState() != null;
+    }
+    return !hasSqlState && getFailedRecord(failure, records) >= 0;
+  }
+
+  private static boolean isDataError(@Nullable Throwable failure) {
+    if (failure instanceof SQLDataException || failure instanceof SQLIntegrityConstraintViolationException) {
+      return true;
+    }
+    if (!(failure instanceof SQLException)) {
+      return false;
+    }
+    String sqlState = ((SQLException) failure).getSQLState();
+    return sqlState != null && (sqlState.startsWith("22") || sqlState.startsWith("23"));
+  }
+
+  /**
+   * Returns whether the failure is transient, so that executing the same records again may succeed. This is the
+   * case for {@link SQLTransientException}s, and for the SQL states of class 40, transaction rollback, which
+   * includes deadlocks and serialization failures.
+   */
+  static boolean isTransient(SQLException failure) {
+    for (SQLException e = failure; e != null; e = e.getNextException()) {
+      if (e instanceof SQLTransientException || e.getCause() instanceof SQLTransientException) {
+        return true;
+      }
+      String sqlState = e.getSQLState();
+      if (sqlState != null && sqlState.startsWith("40")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getMessage(SQLException failure) {
+    SQLException next = failure.getNextException();
+    return next == null ? failure.getMessage() : failure.getMessage() + " " + next.getMessage();
+  }
+}
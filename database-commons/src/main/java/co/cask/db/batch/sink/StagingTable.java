@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.SqlDialect;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Table that the records of a run are written to before they are published to the target table of the sink.
+ * The staging table has the columns of the target table, but none of its indexes or constraints, so that it can be
+ * loaded quickly. It is published with a single {@code INSERT ... SELECT} statement, so that the records of the run
+ * appear in the target table at once, or not at all.
+ */
+final class StagingTable {
+  // the longest table name that every database supports, since Oracle before 12.2 limits names to 30 characters
+  static final int MAX_NAME_LENGTH = 30;
+  private static final Logger LOG = LoggerFactory.getLogger(StagingTable.class);
+
+  private final SqlDialect dialect;
+  private final String tableName;
+  private final String name;
+  private final String columns;
+
+  /**
+   * @param dialect the dialect of the database
+   * @param tableName the target table
+   * @param name the name of the staging table
+   * @param columns comma-separated list of the columns that are written
+   */
+  StagingTable(SqlDialect dialect, String tableName, String name, String columns) {
+    Preconditions.checkArgument(dialect != SqlDialect.PHOENIX, "Phoenix does not support staging tables.");
+    this.dialect = dialect;
+    this.tableName = tableName;
+    this.name = name;
+    this.columns = columns;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the name of the staging table of a run for the given target table, in the schema of the target table.
+   * The name is the target table name followed by '_STG_' and a hash of the target table and the start time of the
+   * run, and the target table name is truncated so that the name is not longer than the given maximum length.
+   *
+   * @param tableName the target table, optionally qualified with its schema
+   * @param runTime the logical start time of the run
+   * @param maxLength the maximum length of table names, excluding the schema and quotes
+   * @throws IllegalArgumentException if the maximum length is too short for the suffix of the name
+   */
+  static String getName(String tableName, long runTime, int maxLength) {
+    int schemaEnd = tableName.lastIndexOf('.') + 1;
+    String table = tableName.substring(schemaEnd);
+    boolean quoted = table.length() > 1 && table.startsWith("\"") && table.endsWith("\"");
+    if (quoted) {
+      table = table.substring(1, table.length() - 1);
+    }
+    String suffix = "_STG_" + Hashing.murmur3_32().newHasher()
+      .putString(tableName, Charsets.UTF_8).putLong(runTime).hash();
+    Preconditions.checkArgument(suffix.length() < maxLength,
+                                "Staging table names can not be generated for table names of at most %s characters.",
+                                maxLength);
+    String name = table.substring(0, Math.min(table.length(), maxLength - suffix.length())) + suffix;
+    return tableName.substring(0, schemaEnd) + (quoted ? "\"" + name + "\"" : name);
+  }
+
+  /**
+   * Creates the staging table as an empty copy of the columns of the target table.
+   */
+  void create(Connection connection) throws SQLException {
+    execute(connection, getCreateQuery());
+  }
+
+  /**
+   * Inserts the rows of the staging table into the target table. The caller is responsible for the transaction.
+   */
+  void publish(Connection connection) throws SQLException {
+    execute(connection, String.format("INSERT INTO %s (%s) SELECT %s FROM %s", tableName, columns, columns, name));
+  }
+
+  /**
+   * Drops the staging table.
+   */
+  void drop(Connection connection) throws SQLException {
+    execute(connection, "DROP TABLE " + name);
+  }
+
+  String getCreateQuery() {
+    String select = String.format("SELECT %s FROM %s WHERE 1 = 0", columns, tableName);
+    switch (dialect) {
+      case SQLSERVER:
+        return String.format("SELECT %s INTO %s FROM %s WHERE 1 = 0", columns, name, tableName);
+      case POSTGRESQL:
+      case MYSQL:
+      case ORACLE:
+        return String.format("CREATE TABLE %s AS %s", name, select);
+      default:
+        // standard SQL, which for example HSQLDB and DB2 require
+        return String.format("CREATE TABLE %s AS (%s) WITH NO DATA", name, select);
+    }
+  }
+
+  private static void execute(Connection connection, String query) throws SQLException {
+    LOG.debug("Executing {}", query);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(query);
+    }
+  }
+}
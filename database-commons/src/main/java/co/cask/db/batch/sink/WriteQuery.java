@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.sink;
+
+import co.cask.SqlDialect;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A parameterized statement that writes a record to a table, and the fields of the record that are bound to its
+ * parameters.
+ */
+final class WriteQuery {
+  private final String query;
+  private final int[] parameterFields;
+
+  /**
+   * @param query the parameterized statement
+   * @param parameterFields the index of the field bound to each parameter, or {@code null} if the statement has one
+   *                        parameter per field in the order of the fields
+   */
+  WriteQuery(String query, @Nullable int[] parameterFields) {
+    this.query = query;
+    this.parameterFields = parameterFields;
+  }
+
+  String getQuery() {
+    return query;
+  }
+
+  @Nullable
+  int[] getParameterFields() {
+    return parameterFields;
+  }
+
+  /**
+   * Creates an INSERT statement with a row of values for each of the given number of records, like
+   * {@code INSERT INTO table (a, b) VALUES (?, ?), (?, ?)}. The fields of the records are bound in order, one
+   * record after the other.
+   *
+   * @param table the table to write to
+   * @param columns the columns of the table, in the order of the fields of the records, or {@code null} names if
+   *                the records have a field for every column of the table
+   * @param rows the number of records inserted by the statement
+   */
+  static WriteQuery insert(String table, String[] columns, int rows) {
+    StringBuilder query = new StringBuilder("INSERT INTO ").append(table);
+    if (columns.length > 0 && columns[0] != null) {
+      query.append(" (");
+      for (int i = 0; i < columns.length; i++) {
+        query.append(i == 0 ? "" : ", ").append(columns[i].trim());
+      }
+      query.append(")");
+    }
+    query.append(" VALUES ");
+    for (int row = 0; row < rows; row++) {
+      query.append(row == 0 ? "(" : ", (");
+      for (int i = 0; i < columns.length; i++) {
+        query.append(i == 0 ? "?" : ", ?");
+      }
+      query.append(")");
+    }
+    return new WriteQuery(query.toString(), null);
+  }
+
+  /**
+   * Creates a statement that updates the row with the same key columns as the record, or inserts the record if there
+   * is no such row, in the syntax of the given dialect.
+   *
+   * @param dialect the dialect of the database
+   * @param table the table to write to
+   * @param columns the columns of the table, in the order of the fields of the records
+   * @param keyColumns the columns that identify a row of the table
+   */
+  static WriteQuery upsert(SqlDialect dialect, String table, String[] columns, String[] keyColumns) {
+    switch (dialect) {
+      case POSTGRESQL:
+        return onConflict(table, columns, keyColumns);
+      case MYSQL:
+        return onDuplicateKey(table, columns, keyColumns);
+      case ORACLE:
+        return merge(table, columns, keyColumns, "DUAL", "");
+      case SQLSERVER:
+        // SQL Server requires MERGE statements to be terminated
+        return merge(table, columns, keyColumns, "(VALUES (1)) AS S (X)", ";");
+      default:
+        return merge(table, columns, keyColumns);
+    }
+  }
+
+  /**
+   * Creates a standard SQL MERGE statement that updates the row with the same key columns as the record,
+   * or inserts the record if there is no such row.
+   * <p>
+   * The values of the record are bound to parameters whose types are known from the columns they are compared with
+   * or assigned to, since most databases cannot infer the types of parameters in a VALUES derived table.
+   *
+   * @param table the table to write to
+   * @param columns the columns of the table, in the order of the fields of the records
+   * @param keyColumns the columns that identify a row of the table
+   */
+  static WriteQuery merge(String table, String[] columns, String[] keyColumns) {
+    return merge(table, columns, keyColumns, "(VALUES (1)) AS S (X)", "");
+  }
+
+  private static WriteQuery merge(String table, String[] columns, String[] keyColumns, String source,
+                                  String terminator) {
+    String[] fieldNames = getFieldNames(columns, keyColumns);
+    int[] keyFields = getKeyFields(fieldNames, keyColumns);
+
+    List<Integer> parameterFields = new ArrayList<>();
+    StringBuilder query = new StringBuilder("MERGE INTO ").append(table)
+      .append(" T USING ").append(source).append(" ON (");
+    for (int i = 0; i < keyFields.length; i++) {
+      query.append(i == 0 ? "" : " AND ").append("T.").append(fieldNames[keyFields[i]]).append(" = ?");
+      parameterFields.add(keyFields[i]);
+    }
+    query.append(")");
+
+    List<String> updates = new ArrayList<>();
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (!contains(keyFields, i)) {
+        updates.add(fieldNames[i] + " = ?");
+        parameterFields.add(i);
+      }
+    }
+    if (!updates.isEmpty()) {
+      query.append(" WHEN MATCHED THEN UPDATE SET ");
+      Joiner.on(", ").appendTo(query, updates);
+    }
+
+    query.append(" WHEN NOT MATCHED THEN INSERT (");
+    Joiner.on(", ").appendTo(query, fieldNames);
+    query.append(") VALUES (");
+    for (int i = 0; i < fieldNames.length; i++) {
+      query.append(i == 0 ? "?" : ", ?");
+      parameterFields.add(i);
+    }
+    query.append(")").append(terminator);
+    return new WriteQuery(query.toString(), toArray(parameterFields));
+  }
+
+  /**
+   * Creates a PostgreSQL {@code INSERT ... ON CONFLICT (keys) DO UPDATE} statement. The key columns must have a
+   * unique index or constraint.
+   */
+  private static WriteQuery onConflict(String table, String[] columns, String[] keyColumns) {
+    String[] fieldNames = getFieldNames(columns, keyColumns);
+    int[] keyFields = getKeyFields(fieldNames, keyColumns);
+
+    StringBuilder query = new StringBuilder(insert(table, fieldNames, 1).getQuery()).append(" ON CONFLICT (");
+    for (int i = 0; i < keyFields.length; i++) {
+      query.append(i == 0 ? "" : ", ").append(fieldNames[keyFields[i]]);
+    }
+    query.append(")");
+
+    List<String> updates = new ArrayList<>();
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (!contains(keyFields, i)) {
+        updates.add(fieldNames[i] + " = EXCLUDED." + fieldNames[i]);
+      }
+    }
+    if (updates.isEmpty()) {
+      query.append(" DO NOTHING");
+    } else {
+      query.append(" DO UPDATE SET ");
+      Joiner.on(", ").appendTo(query, updates);
+    }
+    return new WriteQuery(query.toString(), null);
+  }
+
+  /**
+   * Creates a MySQL {@code INSERT ... ON DUPLICATE KEY UPDATE} statement. MySQL finds the existing row with the
+   * primary key or any unique index of the table, so the key columns should be the only unique columns.
+   */
+  private static WriteQuery onDuplicateKey(String table, String[] columns, String[] keyColumns) {
+    String[] fieldNames = getFieldNames(columns, keyColumns);
+    int[] keyFields = getKeyFields(fieldNames, keyColumns);
+
+    List<String> updates = new ArrayList<>();
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (!contains(keyFields, i)) {
+        updates.add(String.format("%s = VALUES(%s)", fieldNames[i], fieldNames[i]));
+      }
+    }
+    if (updates.isEmpty()) {
+      // there is nothing to update, but assigning a column to itself leaves the existing row unchanged
+      String keyColumn = fieldNames[keyFields[0]];
+      updates.add(keyColumn + " = " + keyColumn);
+    }
+    StringBuilder query = new StringBuilder(insert(table, fieldNames, 1).getQuery())
+      .append(" ON DUPLICATE KEY UPDATE ");
+    Joiner.on(", ").appendTo(query, updates);
+    return new WriteQuery(query.toString(), null);
+  }
+
+  /**
+   * Creates an UPDATE statement that updates the row with the same key columns as the record. Records without a
+   * matching row are ignored.
+   *
+   * @param table the table to write to
+   * @param columns the columns of the table, in the order of the fields of the records
+   * @param keyColumns the columns that identify a row of the table
+   */
+  static WriteQuery update(String table, String[] columns, String[] keyColumns) {
+    String[] fieldNames = getFieldNames(columns, keyColumns);
+    int[] keyFields = getKeyFields(fieldNames, keyColumns);
+    Preconditions.checkArgument(keyFields.length < fieldNames.length,
+                                "The columns must include a column that is not a key column to update records.");
+
+    List<Integer> parameterFields = new ArrayList<>();
+    StringBuilder query = new StringBuilder("UPDATE ").append(table).append(" SET ");
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (!contains(keyFields, i)) {
+        query.append(parameterFields.isEmpty() ? "" : ", ").append(fieldNames[i]).append(" = ?");
+        parameterFields.add(i);
+      }
+    }
+    query.append(" WHERE ");
+    for (int i = 0; i < keyFields.length; i++) {
+      query.append(i == 0 ? "" : " AND ").append(fieldNames[keyFields[i]]).append(" = ?");
+      parameterFields.add(keyFields[i]);
+    }
+    return new WriteQuery(query.toString(), toArray(parameterFields));
+  }
+
+  private static String[] getFieldNames(String[] columns, String[] keyColumns) {
+    Preconditions.checkArgument(keyColumns.length > 0, "Key columns are required to upsert or update records.");
+    String[] fieldNames = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      Preconditions.checkArgument(columns[i] != null, "Column names are required to upsert or update records.");
+      fieldNames[i] = columns[i].trim();
+    }
+    return fieldNames;
+  }
+
+  private static int[] getKeyFields(String[] fieldNames, String[] keyColumns) {
+    int[] keyFields = new int[keyColumns.length];
+    for (int i = 0; i < keyColumns.length; i++) {
+      keyFields[i] = indexOf(fieldNames, keyColumns[i].trim());
+    }
+    return keyFields;
+  }
+
+  private static int indexOf(String[] fieldNames, String column) {
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (fieldNames[i].equalsIgnoreCase(column)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Key column '%s' must be one of the columns %s.",
+                                                     column, Joiner.on(",").join(fieldNames)));
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    int[] array = new int[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+}
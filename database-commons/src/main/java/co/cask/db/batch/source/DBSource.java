@@ -17,12 +17,14 @@
 package co.cask.db.batch.source;
 
 import co.cask.ConnectionConfig;
+import co.cask.ConnectionPool;
 import co.cask.DBConfig;
 import co.cask.DBManager;
 import co.cask.DBRecord;
 import co.cask.DBUtils;
-import co.cask.DriverCleanup;
 import co.cask.FieldCase;
+import co.cask.LobSizePolicy;
+import co.cask.SqlDialect;
 import co.cask.StructuredRecordUtils;
 import co.cask.cdap.api.annotation.Description;
 import co.cask.cdap.api.annotation.Macro;
@@ -44,7 +46,13 @@ import co.cask.hydrator.common.LineageRecorder;
 import co.cask.hydrator.common.ReferenceBatchSource;
 import co.cask.hydrator.common.ReferencePluginConfig;
 import co.cask.hydrator.common.SourceInputFormatProvider;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.MRJobConfig;
@@ -55,11 +63,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.ws.rs.Path;
 
@@ -72,6 +79,13 @@ import javax.ws.rs.Path;
   " Outputs one record for each row returned by the query.")
 public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, StructuredRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(DBSource.class);
+  private static final long SCHEMA_CACHE_TTL_MINUTES = 5;
+  // schemas discovered by the getSchema endpoint, by a hash of the connection and query, since the UI requests the
+  // schema of the same query several times while a pipeline is edited
+  private static final Cache<String, Schema> SCHEMA_CACHE = CacheBuilder.newBuilder()
+    .expireAfterWrite(SCHEMA_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+    .maximumSize(1000)
+    .build();
 
   private final DBSourceConfig sourceConfig;
   private final DBManager dbManager;
@@ -105,6 +119,9 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     @Nullable
     public String jdbcPluginType;
     public String query;
+    // whether to discover the schema again instead of returning a cached schema
+    @Nullable
+    public Boolean refresh;
 
     private String getJDBCPluginType() {
       return jdbcPluginType == null ? "jdbc" : jdbcPluginType;
@@ -112,7 +129,11 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
   }
 
   /**
-   * Endpoint method to get the output schema of a query.
+   * Endpoint method to get the output schema of a query. The schema is discovered without reading the rows of the
+   * query if possible, see {@link QuerySchemaDiscovery}, and is cached for 5 minutes for the same connection and
+   * query. The cache is keyed by a hash of the request, so it does not keep the credentials. A cached schema does not
+   * reflect changes to the tables of the query, like an ALTER TABLE, until it expires, unless the request sets
+   * {@code refresh} to true to discover the schema again.
    *
    * @param request       {@link GetSchemaRequest} containing information required for connection and query to execute.
    * @param pluginContext context to create plugins
@@ -125,27 +146,54 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
   public Schema getSchema(GetSchemaRequest request,
                           EndpointPluginContext pluginContext) throws IllegalAccessException,
     SQLException, InstantiationException {
-    DriverCleanup driverCleanup;
+    String cacheKey = getSchemaCacheKey(request);
+    Schema schema = Boolean.TRUE.equals(request.refresh) ? null : SCHEMA_CACHE.getIfPresent(cacheKey);
+    if (schema != null) {
+      return schema;
+    }
     try {
-      driverCleanup = loadPluginClassAndGetDriver(request, pluginContext);
-      try (Connection connection = getConnection(request)) {
+      Class<? extends Driver> driverClass = loadDriverClass(request, pluginContext);
+      try (Connection connection = getConnection(driverClass, request)) {
         String query = request.query;
-        Statement statement = connection.createStatement();
-        statement.setMaxRows(1);
         if (query.contains("$CONDITIONS")) {
           query = removeConditionsClause(query);
         }
-        ResultSet resultSet = statement.executeQuery(query);
-        return Schema.recordOf("outputSchema", DBUtils.getSchemaFields(resultSet));
-      } finally {
-        driverCleanup.destroy();
+        schema = QuerySchemaDiscovery.getSchema(connection, query);
       }
+      SCHEMA_CACHE.put(cacheKey, schema);
+      return schema;
     } catch (Exception e) {
       LOG.error("Exception while performing getSchema", e);
       throw e;
     }
   }
 
+  /**
+   * Returns the key of the schema of the given request in the schema cache, a hash of the request, so that the cache
+   * does not keep the password or credentials in the connection string or arguments in memory.
+   */
+  private static String getSchemaCacheKey(GetSchemaRequest request) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String value : Arrays.asList(request.getJDBCPluginType(), request.jdbcPluginName, request.connectionString,
+                                      request.connectionArguments, request.user, request.password, request.query)) {
+      // the length separates the values, and distinguishes null from empty values
+      hasher.putInt(value == null ? -1 : value.length());
+      if (value != null) {
+        hasher.putString(value, Charsets.UTF_8);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the schema of the records read with the given schema, which has the field names converted to the
+   * configured column name case.
+   */
+  @VisibleForTesting
+  public static Schema getRecordSchema(Schema schema, @Nullable String columnNameCase) {
+    return StructuredRecordUtils.convertCase(schema, FieldCase.toFieldCase(columnNameCase));
+  }
+
   private static String removeConditionsClause(String importQuerySring) {
     importQuerySring = importQuerySring.replaceAll("\\s{2,}", " ").toUpperCase();
     if (importQuerySring.contains("WHERE $CONDITIONS AND")) {
@@ -158,8 +206,8 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     return importQuerySring;
   }
 
-  private DriverCleanup loadPluginClassAndGetDriver(GetSchemaRequest request, EndpointPluginContext pluginContext)
-    throws IllegalAccessException, InstantiationException, SQLException {
+  private Class<? extends Driver> loadDriverClass(GetSchemaRequest request, EndpointPluginContext pluginContext)
+    throws InstantiationException {
     Class<? extends Driver> driverClass =
       pluginContext.loadPluginClass(request.getJDBCPluginType(),
                                     request.jdbcPluginName, PluginProperties.builder().build());
@@ -169,22 +217,16 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
         String.format("Unable to load Driver class with plugin type %s and plugin name %s",
                       request.getJDBCPluginType(), request.jdbcPluginName));
     }
-
-    try {
-      return DBUtils.ensureJDBCDriverIsAvailable(driverClass, request.connectionString,
-                                                 request.getJDBCPluginType(), request.jdbcPluginName);
-    } catch (IllegalAccessException | InstantiationException | SQLException e) {
-      LOG.error("Unable to load or register driver {}", driverClass, e);
-      throw e;
-    }
+    return driverClass;
   }
 
-  private Connection getConnection(GetSchemaRequest getSchemaRequest) throws SQLException {
+  private Connection getConnection(Class<? extends Driver> driverClass,
+                                   GetSchemaRequest getSchemaRequest) throws SQLException {
     Properties properties =
       ConnectionConfig.getConnectionArguments(getSchemaRequest.connectionArguments,
                                               getSchemaRequest.user,
                                               getSchemaRequest.password);
-    return DriverManager.getConnection(getSchemaRequest.connectionString, properties);
+    return ConnectionPool.getInstance().getConnection(driverClass, getSchemaRequest.connectionString, properties);
   }
 
   @Override
@@ -215,7 +257,7 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     if (sourceConfig.connectionArguments != null) {
       hConf.set(DBUtils.CONNECTION_ARGUMENTS, sourceConfig.connectionArguments);
     }
-    if (sourceConfig.numSplits == null || sourceConfig.numSplits != 1) {
+    if (sourceConfig.numSplits == null || sourceConfig.numSplits != 1 || sourceConfig.chunkSize != null) {
       if (!sourceConfig.getImportQuery().contains("$CONDITIONS")) {
         throw new IllegalArgumentException(String.format("Import Query %s must contain the string '$CONDITIONS'.",
                                                          sourceConfig.importQuery));
@@ -224,9 +266,38 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     }
     if (sourceConfig.numSplits != null) {
       hConf.setInt(MRJobConfig.NUM_MAPS, sourceConfig.numSplits);
+    } else if (sourceConfig.rowsPerSplit != null) {
+      Integer numSplits = getNumSplits(driverClass);
+      if (numSplits != null) {
+        hConf.setInt(MRJobConfig.NUM_MAPS, numSplits);
+      }
+    }
+    if (sourceConfig.fetchSize != null) {
+      hConf.setInt(DataDrivenETLDBInputFormat.FETCH_SIZE, sourceConfig.fetchSize);
+    }
+    if (sourceConfig.maxLobSize != null) {
+      hConf.setInt(DBUtils.MAX_LOB_SIZE, sourceConfig.maxLobSize);
+    }
+    if (sourceConfig.lobSizePolicy != null) {
+      hConf.set(DBUtils.LOB_SIZE_POLICY, sourceConfig.lobSizePolicy);
+    }
+    if (sourceConfig.prefetchBufferSize != null) {
+      hConf.setInt(DataDrivenETLDBInputFormat.PREFETCH_BUFFER_SIZE, sourceConfig.prefetchBufferSize);
+    }
+    if (sourceConfig.chunkSize != null) {
+      hConf.setInt(DataDrivenETLDBInputFormat.CHUNK_SIZE, sourceConfig.chunkSize);
+    }
+    if (sourceConfig.splitStrategy != null) {
+      hConf.set(DataDrivenETLDBInputFormat.SPLIT_STRATEGY, sourceConfig.splitStrategy);
     }
     if (sourceConfig.schema != null) {
       hConf.set(DBUtils.OVERRIDE_SCHEMA, sourceConfig.schema);
+      // the records have the configured schema, which lets them be deserialized
+      hConf.set(DBUtils.RECORD_SCHEMA, getRecordSchema(sourceConfig.getSchema(), sourceConfig.columnNameCase)
+        .toString());
+    }
+    if (sourceConfig.columnNameCase != null) {
+      hConf.set(DBUtils.COLUMN_NAME_CASE, sourceConfig.columnNameCase);
     }
     LineageRecorder lineageRecorder = new LineageRecorder(context, sourceConfig.referenceName);
     lineageRecorder.createExternalDataset(sourceConfig.getSchema());
@@ -234,6 +305,36 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
                               new SourceInputFormatProvider(DataDrivenETLDBInputFormat.class, hConf)));
   }
 
+  /**
+   * Returns the number of splits for the configured rows per split, from the estimated number of rows of the
+   * import query, or {@code null} to let the execution framework pick the number of splits if the rows cannot be
+   * estimated.
+   */
+  @Nullable
+  private Integer getNumSplits(Class<? extends Driver> driverClass) {
+    try (Connection connection =
+           ConnectionPool.getInstance().getConnection(driverClass, sourceConfig.connectionString,
+                                                      sourceConfig.getConnectionArguments())) {
+      long rowCount = RowCountEstimator.estimateRowCount(
+        connection, SqlDialect.fromConnectionString(sourceConfig.connectionString), sourceConfig.getImportQuery());
+      int numSplits = RowCountEstimator.getNumSplits(rowCount, sourceConfig.rowsPerSplit);
+      LOG.info("Using {} splits for an estimated {} rows, with {} rows per split.",
+               numSplits, rowCount, sourceConfig.rowsPerSplit);
+      return numSplits;
+    } catch (SQLException e) {
+      LOG.warn("Unable to estimate the number of rows of the import query. " +
+                 "The number of splits is picked by the execution framework.", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    // close the connections that were opened to prepare the run
+    ConnectionPool.getInstance().close(context.loadPluginClass(getJDBCPluginId()));
+  }
+
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
@@ -242,13 +343,14 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
 
   @Override
   public void transform(KeyValue<LongWritable, DBRecord> input, Emitter<StructuredRecord> emitter) throws Exception {
-    emitter.emit(StructuredRecordUtils.convertCase(
-      input.getValue().getRecord(), FieldCase.toFieldCase(sourceConfig.columnNameCase)));
+    // column names are already converted to the configured case when the record is read
+    emitter.emit(input.getValue().getRecord());
   }
 
   @Override
   public void destroy() {
     try {
+      // the connections stay in the pool for the next tasks of the executor
       DBUtils.cleanup(driverClass);
     } finally {
       dbManager.destroy();
@@ -267,8 +369,15 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     public static final String BOUNDING_QUERY = "boundingQuery";
     public static final String SPLIT_BY = "splitBy";
     public static final String NUM_SPLITS = "numSplits";
+    public static final String ROWS_PER_SPLIT = "rowsPerSplit";
     public static final String SCHEMA = "schema";
     public static final String TRANSACTION_ISOLATION_LEVEL = "transactionIsolationLevel";
+    public static final String FETCH_SIZE = "fetchSize";
+    public static final String SPLIT_STRATEGY = "splitStrategy";
+    public static final String CHUNK_SIZE = "chunkSize";
+    public static final String PREFETCH_BUFFER_SIZE = "prefetchBufferSize";
+    public static final String MAX_LOB_SIZE = "maxLobSize";
+    public static final String LOB_SIZE_POLICY = "lobSizePolicy";
 
     @Name(IMPORT_QUERY)
     @Description("The SELECT query to use to import data from the specified table. " +
@@ -297,10 +406,75 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
     @Name(NUM_SPLITS)
     @Description("The number of splits to generate. If set to one, the boundingQuery is not needed, " +
       "and no $CONDITIONS string needs to be specified in the importQuery. If not specified, the " +
-      "execution framework will pick a value.")
+      "execution framework will pick a value, unless rowsPerSplit is set.")
     @Macro
     Integer numSplits;
 
+    @Nullable
+    @Name(ROWS_PER_SPLIT)
+    @Description("If set and numSplits is not set, the number of splits is chosen so that each split has about " +
+      "this many rows, up to 1000 splits. The rows of the import query are estimated before the run, from the " +
+      "query planner for PostgreSQL, from the table statistics if the query reads a whole table, and otherwise " +
+      "with a COUNT query over the import query.")
+    @Macro
+    Integer rowsPerSplit;
+
+    @Nullable
+    @Name(SPLIT_STRATEGY)
+    @Description("How splits are generated from the min and max values returned by the bounding query. " +
+      "'uniform' generates splits of equal width. 'histogram' counts the rows for narrow ranges of the splitBy " +
+      "field, and generates splits with roughly the same number of rows, which is useful if the values of the " +
+      "splitBy field are not evenly distributed. 'histogram' requires an integer splitBy field that is selected " +
+      "by the import query. Defaults to 'uniform'.")
+    @Macro
+    String splitStrategy;
+
+    @Nullable
+    @Name(FETCH_SIZE)
+    @Description("The number of rows to fetch at a time per split. A larger fetch size can result in faster " +
+      "import, with the tradeoff of higher memory usage. If not specified, the default of the JDBC driver is used, " +
+      "which for some drivers, like PostgreSQL, means that a whole split is read into memory. " +
+      "For MySQL, rows are streamed one at a time unless the 'useCursorFetch' connection argument is set.")
+    @Macro
+    Integer fetchSize;
+
+    @Nullable
+    @Name(CHUNK_SIZE)
+    @Description("If set, each split is read with a sequence of short queries that each read at most this many " +
+      "rows, ordered by the splitBy field. Every query continues after the last splitBy value read by the previous " +
+      "one, and the transaction is committed after each query, so that no cursor or snapshot is held open for the " +
+      "whole split. A query that fails with a transient or connection error is retried from the last value read. " +
+      "Requires the splitBy field to be unique and to be selected by the import query, and the import query not to " +
+      "contain an ORDER BY clause. NULL values of the splitBy field are not supported and fail the split, unless " +
+      "all of its values are NULL.")
+    @Macro
+    Integer chunkSize;
+
+    @Nullable
+    @Name(PREFETCH_BUFFER_SIZE)
+    @Description("If set, rows are fetched from the database on a separate thread, while previous rows are " +
+      "processed by the pipeline. This is the maximum number of fetched rows that are buffered per split. " +
+      "Prefetching is useful if both reading from the database and processing the rows take significant time, " +
+      "at the cost of holding up to this many rows in memory.")
+    @Macro
+    Integer prefetchBufferSize;
+
+    @Nullable
+    @Name(MAX_LOB_SIZE)
+    @Description("The maximum number of bytes of a BLOB value, or characters of a CLOB value. Larger values are " +
+      "handled according to the LOB size policy. Defaults to the largest supported size of about 2 GB.")
+    @Macro
+    Integer maxLobSize;
+
+    @Nullable
+    @Name(LOB_SIZE_POLICY)
+    @Description("What to do with BLOB and CLOB values that are larger than the maximum LOB size. " +
+      "'fail' fails the pipeline, 'skip' reads such values as null, or as empty if their field is not nullable, " +
+      "and 'truncate' reads the first bytes or characters of such values, up to the maximum LOB size. " +
+      "Defaults to 'fail'.")
+    @Macro
+    String lobSizePolicy;
+
     @Nullable
     @Name(TRANSACTION_ISOLATION_LEVEL)
     @Description("The transaction isolation level for queries run by this sink. " +
@@ -337,6 +511,49 @@ public class DBSource extends ReferenceBatchSource<LongWritable, DBRecord, Struc
         }
       }
 
+      if (!containsMacro(ROWS_PER_SPLIT) && rowsPerSplit != null && rowsPerSplit < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for rowsPerSplit. Must be at least 1, but got " + rowsPerSplit);
+      }
+
+      if (!containsMacro(SPLIT_STRATEGY)) {
+        SplitStrategy.validate(splitStrategy);
+      }
+
+      if (!containsMacro(FETCH_SIZE) && fetchSize != null && fetchSize < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for fetchSize. Must be at least 1, but got " + fetchSize);
+      }
+
+      if (!containsMacro(MAX_LOB_SIZE) && maxLobSize != null && maxLobSize < 0) {
+        throw new IllegalArgumentException(
+          "Invalid value for maxLobSize. Must be at least 0, but got " + maxLobSize);
+      }
+
+      if (!containsMacro(LOB_SIZE_POLICY)) {
+        LobSizePolicy.validate(lobSizePolicy);
+      }
+
+      if (!containsMacro(PREFETCH_BUFFER_SIZE) && prefetchBufferSize != null && prefetchBufferSize < 1) {
+        throw new IllegalArgumentException(
+          "Invalid value for prefetchBufferSize. Must be at least 1, but got " + prefetchBufferSize);
+      }
+
+      if (!containsMacro(CHUNK_SIZE) && chunkSize != null) {
+        if (chunkSize < 1) {
+          throw new IllegalArgumentException(
+            "Invalid value for chunkSize. Must be at least 1, but got " + chunkSize);
+        }
+        // chunks are read by the split-by column even if there is just one split
+        if (!containsMacro("importQuery") && !getImportQuery().contains("$CONDITIONS")) {
+          throw new IllegalArgumentException(String.format(
+            "Import Query %s must contain the string '$CONDITIONS' if chunkSize is set.", importQuery));
+        }
+        if (!containsMacro("splitBy") && (splitBy == null || splitBy.isEmpty())) {
+          throw new IllegalArgumentException("The splitBy must be specified if chunkSize is set.");
+        }
+      }
+
       if (!containsMacro("transactionIsolationLevel") && transactionIsolationLevel != null) {
         TransactionIsolationLevel.validate(transactionIsolationLevel);
       }
@@ -17,38 +17,45 @@
 package co.cask.db.batch.source;
 
 import co.cask.ConnectionConfig;
+import co.cask.ConnectionPool;
 import co.cask.DBUtils;
-import co.cask.JDBCDriverShim;
+import co.cask.DriverConnectionFactory;
 import co.cask.db.batch.NoOpCommitConnection;
 import co.cask.db.batch.TransactionIsolationLevel;
 import com.google.common.base.Throwables;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
-import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
 import org.apache.hadoop.mapreduce.lib.db.DBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.DBSplitter;
 import org.apache.hadoop.mapreduce.lib.db.DBWritable;
 import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBRecordReader;
+import org.apache.hadoop.mapreduce.lib.db.MySQLDataDrivenDBRecordReader;
+import org.apache.hadoop.mapreduce.lib.db.OracleDBRecordReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Driver;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Properties;
+import javax.annotation.Nullable;
 
 /**
  * Class that extends {@link DBInputFormat} to load the database driver class correctly.
  */
 public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
   public static final String AUTO_COMMIT_ENABLED = "co.cask.hydrator.db.autocommit.enabled";
+  public static final String FETCH_SIZE = "co.cask.hydrator.db.fetch.size";
+  public static final String SPLIT_STRATEGY = "co.cask.hydrator.db.split.strategy";
+  public static final String CHUNK_SIZE = "co.cask.hydrator.db.chunk.size";
+  public static final String PREFETCH_BUFFER_SIZE = "co.cask.hydrator.db.prefetch.buffer.size";
 
   private static final Logger LOG = LoggerFactory.getLogger(DataDrivenETLDBInputFormat.class);
-  private Driver driver;
-  private JDBCDriverShim driverShim;
 
   static void setInput(Configuration conf,
                        Class<? extends DBWritable> inputClass,
@@ -68,32 +75,12 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
       Configuration conf = getConf();
       try {
         String url = conf.get(DBConfiguration.URL_PROPERTY);
-        try {
-          // throws SQLException if no suitable driver is found
-          DriverManager.getDriver(url);
-        } catch (SQLException e) {
-          if (driverShim == null) {
-            if (driver == null) {
-              ClassLoader classLoader = conf.getClassLoader();
-              @SuppressWarnings("unchecked")
-              Class<? extends Driver> driverClass =
-                (Class<? extends Driver>) classLoader.loadClass(conf.get(DBConfiguration.DRIVER_CLASS_PROPERTY));
-              driver = driverClass.newInstance();
-
-              // De-register the default driver that gets registered when driver class is loaded.
-              DBUtils.deregisterAllDrivers(driverClass);
-            }
-            driverShim = new JDBCDriverShim(driver);
-            DriverManager.registerDriver(driverShim);
-            LOG.debug("Registered JDBC driver via shim {}. Actual Driver {}.", driverShim, driver);
-          }
-        }
-
+        Class<? extends Driver> driverClass = DriverConnectionFactory.loadDriverClass(conf);
         Properties properties =
           ConnectionConfig.getConnectionArguments(conf.get(DBUtils.CONNECTION_ARGUMENTS),
                                                   conf.get(DBConfiguration.USERNAME_PROPERTY),
                                                   conf.get(DBConfiguration.PASSWORD_PROPERTY));
-        connection = DriverManager.getConnection(url, properties);
+        connection = ConnectionPool.getInstance().getConnection(driverClass, url, properties);
 
 
         boolean autoCommitEnabled = conf.getBoolean(AUTO_COMMIT_ENABLED, false);
@@ -113,6 +100,20 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
     return this.connection;
   }
 
+  @Override
+  protected DBSplitter getSplitter(int sqlDataType) {
+    DBSplitter splitter = super.getSplitter(sqlDataType);
+    SplitStrategy strategy = SplitStrategy.getStrategy(getConf().get(SPLIT_STRATEGY));
+    if (strategy == SplitStrategy.HISTOGRAM) {
+      if (HistogramSplitter.isSupported(sqlDataType)) {
+        return new HistogramSplitter(getConnection(), getDBConf().getInputQuery(), splitter);
+      }
+      LOG.warn("Histogram splits are only supported for integer split-by columns, but the column has SQL type {}. " +
+                 "Generating splits of equal width instead.", sqlDataType);
+    }
+    return splitter;
+  }
+
   // versions > HDP-2.3.4 started using createConnection instead of getConnection,
   // this is added for compatibility, more information at (HYDRATOR-791)
   public Connection createConnection() {
@@ -120,53 +121,123 @@ public class DataDrivenETLDBInputFormat extends DataDrivenDBInputFormat {
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   protected RecordReader createDBRecordReader(DBInputSplit split, Configuration conf) throws IOException {
-    final RecordReader dbRecordReader = super.createDBRecordReader(split, conf);
-    return new RecordReader() {
-      @Override
-      public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
-        dbRecordReader.initialize(split, context);
-      }
+    RecordReader splitRecordReader = conf.getInt(CHUNK_SIZE, 0) > 0 ?
+      createKeysetRecordReader(split, conf) : createStreamingRecordReader(split, conf);
+    int prefetchBufferSize = conf.getInt(PREFETCH_BUFFER_SIZE, 0);
+    return prefetchBufferSize > 0 ?
+      new PrefetchingDBRecordReader(splitRecordReader, prefetchBufferSize) : splitRecordReader;
+  }
 
-      @Override
-      public boolean nextKeyValue() throws IOException, InterruptedException {
-        return dbRecordReader.nextKeyValue();
+  /**
+   * Creates the record reader for a split. Like {@link DataDrivenDBInputFormat}, it uses the record reader for
+   * MySQL or Oracle if the database is one of those, but it sets the configured fetch size on the statement, so that
+   * drivers fetch the rows of a split in batches rather than buffering the whole split in memory.
+   */
+  @SuppressWarnings("unchecked")
+  private RecordReader createStreamingRecordReader(DBInputSplit split, Configuration conf) throws IOException {
+    DBConfiguration dbConf = getDBConf();
+    String dbProductName = getDBProductName();
+    final Integer fetchSize = getFetchSize(conf, dbProductName);
+    LOG.debug("Creating db record reader for db product {} with fetch size {}", dbProductName, fetchSize);
+    try {
+      if (dbProductName.startsWith("MYSQL")) {
+        return new MySQLDataDrivenDBRecordReader(split, dbConf.getInputClass(), conf, getConnection(), dbConf,
+                                                 dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                                 dbConf.getInputTableName()) {
+          @Override
+          protected ResultSet executeQuery(String query) throws SQLException {
+            PreparedStatement statement = prepareStatement(getConnection(), query, fetchSize);
+            setStatement(statement);
+            return statement.executeQuery();
+          }
+        };
       }
-
-      @Override
-      public Object getCurrentKey() throws IOException, InterruptedException {
-        return dbRecordReader.getCurrentKey();
+      if (dbProductName.startsWith("ORACLE")) {
+        // same as the OracleDataDrivenDBRecordReader, which can not set the time zone of a pooled connection
+        setSessionTimeZone(conf, getConnection());
       }
+      return new DataDrivenDBRecordReader(split, dbConf.getInputClass(), conf, getConnection(), dbConf,
+                                          dbConf.getInputConditions(), dbConf.getInputFieldNames(),
+                                          dbConf.getInputTableName(), dbProductName) {
+        @Override
+        protected ResultSet executeQuery(String query) throws SQLException {
+          PreparedStatement statement = prepareStatement(getConnection(), query, fetchSize);
+          setStatement(statement);
+          return statement.executeQuery();
+        }
+      };
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
 
-      @Override
-      public Object getCurrentValue() throws IOException, InterruptedException {
-        return dbRecordReader.getCurrentValue();
-      }
+  private static PreparedStatement prepareStatement(Connection connection, String query,
+                                                    @Nullable Integer fetchSize) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                              ResultSet.CONCUR_READ_ONLY);
+    if (fetchSize != null) {
+      statement.setFetchSize(fetchSize);
+    }
+    return statement;
+  }
 
-      @Override
-      public float getProgress() throws IOException, InterruptedException {
-        return dbRecordReader.getProgress();
-      }
+  /**
+   * Sets the time zone of the Oracle session, so that TIMESTAMP WITH LOCAL TIME ZONE values are read in the time
+   * zone configured for {@link OracleDBRecordReader}. The time zone is set with a method of the Oracle connection,
+   * which is looked up by reflection, so it is set on the connection of the driver rather than on a wrapper of it.
+   */
+  static void setSessionTimeZone(Configuration conf, Connection connection) throws SQLException {
+    OracleDBRecordReader.setSessionTimeZone(conf, connection.unwrap(Connection.class));
+  }
 
-      @Override
-      public void close() throws IOException {
-        dbRecordReader.close();
-        try {
-          DriverManager.deregisterDriver(driverShim);
-        } catch (SQLException e) {
-          throw new IOException(e);
-        }
+  /**
+   * Creates a record reader that reads a split in chunks of the configured size, ordered by the split-by column.
+   *
+   * @see KeysetDBRecordReader
+   */
+  @SuppressWarnings("unchecked")
+  private RecordReader createKeysetRecordReader(DBInputSplit split, Configuration conf) throws IOException {
+    DBConfiguration dbConf = getDBConf();
+    String splitBy = dbConf.getInputOrderBy();
+    if (splitBy == null || !(split instanceof DataDrivenDBInputSplit)) {
+      throw new IOException("Reading in chunks requires a splitBy column and splits generated from its values.");
+    }
+    String dbProductName = getDBProductName();
+    Integer fetchSize = getFetchSize(conf, dbProductName);
+    int chunkSize = conf.getInt(CHUNK_SIZE, 0);
+    LOG.debug("Creating keyset db record reader for db product {} with chunk size {} and fetch size {}",
+              dbProductName, chunkSize, fetchSize);
+    if (dbProductName.startsWith("ORACLE")) {
+      try {
+        setSessionTimeZone(conf, getConnection());
+      } catch (SQLException e) {
+        throw new IOException(e);
       }
-    };
+    }
+    return new KeysetDBRecordReader((DataDrivenDBInputSplit) split, dbConf.getInputClass(), conf, getConnection(),
+                                    dbConf.getInputQuery(), splitBy, chunkSize, fetchSize);
   }
 
-  @Override
-  protected void closeConnection() {
-    super.closeConnection();
-    try {
-      DriverManager.deregisterDriver(driverShim);
-    } catch (SQLException e) {
-      throw Throwables.propagate(e);
+  /**
+   * Returns the fetch size to use for the given database, or {@code null} to keep the default of the driver.
+   */
+  @Nullable
+  private static Integer getFetchSize(Configuration conf, String dbProductName) {
+    int fetchSize = conf.getInt(FETCH_SIZE, 0);
+    if (dbProductName.startsWith("MYSQL")) {
+      // MySQL only streams results with a fetch size of Integer.MIN_VALUE,
+      // unless a positive fetch size is combined with the 'useCursorFetch' connection argument.
+      return fetchSize > 0 ? fetchSize : Integer.MIN_VALUE;
+    }
+    if (fetchSize <= 0) {
+      return null;
+    }
+    if (dbProductName.startsWith("POSTGRESQL") && conf.getBoolean(AUTO_COMMIT_ENABLED, false)) {
+      LOG.warn("The PostgreSQL driver ignores the fetch size {} when auto-commit is enabled, " +
+                 "and will read each split into memory.", fetchSize);
     }
+    return fetchSize;
   }
 }
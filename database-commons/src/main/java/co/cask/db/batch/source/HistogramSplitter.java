@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.db.DBSplitter;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link DBSplitter} for integer split-by columns that generates splits containing roughly the same number of rows,
+ * even if the values of the column are not evenly distributed between the min and max returned by the
+ * bounding query.
+ * <p>
+ * The range between min and max is divided into a number of narrow buckets, and the number of rows in each bucket
+ * is counted by the database with a single aggregate query over the import query. Split boundaries are then placed
+ * at the bucket edges where the cumulative row count crosses a multiple of the expected rows per split.
+ * If the histogram cannot be computed, for example because the import query does not select the split-by column,
+ * splits are generated by the given fallback splitter instead.
+ */
+public class HistogramSplitter implements DBSplitter {
+  private static final Logger LOG = LoggerFactory.getLogger(HistogramSplitter.class);
+  // number of histogram buckets per split. Boundaries can only be placed at bucket edges.
+  private static final int BUCKETS_PER_SPLIT = 100;
+
+  private final Connection connection;
+  private final String importQuery;
+  private final DBSplitter fallback;
+
+  public HistogramSplitter(Connection connection, String importQuery, DBSplitter fallback) {
+    this.connection = connection;
+    this.importQuery = importQuery;
+    this.fallback = fallback;
+  }
+
+  /**
+   * @return whether the given SQL type of the split-by column is supported by this splitter
+   */
+  public static boolean isSupported(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public List<InputSplit> split(Configuration conf, ResultSet results, String colName) throws SQLException {
+    long min = results.getLong(1);
+    boolean minIsNull = results.wasNull();
+    long max = results.getLong(2);
+    boolean maxIsNull = results.wasNull();
+    int numSplits = conf.getInt(MRJobConfig.NUM_MAPS, 1);
+    // max - min + 1 overflows for ranges that span (almost) all longs
+    if (minIsNull || maxIsNull || numSplits <= 1 || max - min + 1 <= numSplits || max - min + 1 <= 0) {
+      return fallback.split(conf, results, colName);
+    }
+
+    long range = max - min + 1;
+    long width = ceilDiv(range, Math.min(range, (long) numSplits * BUCKETS_PER_SPLIT));
+    long[] counts = new long[(int) ceilDiv(range, width)];
+    try {
+      countRows(colName, min, max, width, counts);
+    } catch (SQLException e) {
+      LOG.warn("Unable to compute the histogram of split-by column {}. Falling back to splits of equal width.",
+               colName, e);
+      return fallback.split(conf, results, colName);
+    }
+
+    List<Long> boundaries = getBoundaries(counts, numSplits, min, max, width);
+    if (boundaries.size() < 2) {
+      return fallback.split(conf, results, colName);
+    }
+
+    List<InputSplit> splits = new ArrayList<>();
+    for (int i = 0; i < boundaries.size() - 1; i++) {
+      String lowerClause = String.format("%s >= %d", colName, boundaries.get(i));
+      String upperClause = i == boundaries.size() - 2 ?
+        String.format("%s <= %d", colName, max) : String.format("%s < %d", colName, boundaries.get(i + 1));
+      splits.add(new DataDrivenDBInputFormat.DataDrivenDBInputSplit(lowerClause, upperClause));
+    }
+    LOG.debug("Generated {} splits for split-by column {} from a histogram of {} buckets.",
+              splits.size(), colName, counts.length);
+    return splits;
+  }
+
+  /**
+   * Counts the rows of the import query in every bucket of the given width, starting at min.
+   */
+  private void countRows(String colName, long min, long max, long width, long[] counts) throws SQLException {
+    // the import query is used as a derived table, so refer to the split-by column without its table qualifier
+    String column = colName.substring(colName.lastIndexOf('.') + 1);
+    String bucket = String.format("FLOOR((%s - %d) / %d)", column, min, width);
+    String query = String.format("SELECT %s, COUNT(*) FROM (%s) t WHERE %s BETWEEN %d AND %d GROUP BY %s",
+                                 bucket, importQuery.replace(DataDrivenDBInputFormat.SUBSTITUTE_TOKEN, "(1 = 1)"),
+                                 column, min, max, bucket);
+    LOG.debug("Computing histogram of split-by column {} with query {}", colName, query);
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery(query)) {
+      while (rs.next()) {
+        counts[(int) rs.getLong(1)] += rs.getLong(2);
+      }
+    }
+  }
+
+  /**
+   * Returns the lower boundaries of the splits, followed by the max.
+   */
+  static List<Long> getBoundaries(long[] counts, int numSplits, long min, long max, long width) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    List<Long> boundaries = new ArrayList<>();
+    if (total == 0) {
+      return boundaries;
+    }
+
+    boundaries.add(min);
+    long cumulative = 0;
+    int split = 1;
+    for (int i = 0; i < counts.length && split < numSplits; i++) {
+      cumulative += counts[i];
+      // the split ends after this bucket if it contains at least the expected rows per split
+      if (cumulative * numSplits >= total * split) {
+        long boundary = min + (i + 1) * width;
+        if (boundary <= max) {
+          boundaries.add(boundary);
+        }
+        while (split < numSplits && cumulative * numSplits >= total * split) {
+          split++;
+        }
+      }
+    }
+    boundaries.add(max);
+    return boundaries;
+  }
+
+  // x and y must be positive
+  private static long ceilDiv(long x, long y) {
+    return (x - 1) / y + 1;
+  }
+}
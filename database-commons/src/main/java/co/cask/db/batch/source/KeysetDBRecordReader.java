@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.db.DBWritable;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import javax.annotation.Nullable;
+
+/**
+ * {@link RecordReader} that reads a split in chunks ordered by the split-by column, using the seek method
+ * (keyset pagination). The first chunk reads the first rows of the split, and every following chunk only reads
+ * rows with a split-by value greater than the last value that was read:
+ *
+ * <pre>
+ *   SELECT ... WHERE ( lower ) AND ( upper ) AND ( splitBy > ? ) ORDER BY splitBy
+ * </pre>
+ *
+ * The number of rows of a chunk is limited with {@link PreparedStatement#setMaxRows(int)}, and the transaction is
+ * committed after every chunk, so that no cursor or snapshot is held open for the whole split.
+ * If reading a chunk fails with a transient or connection error, the chunk is queried again starting after the last
+ * value that was read. Other errors, such as values that can not be decoded, fail immediately.
+ * <p>
+ * The split-by column must be unique and must be selected by the import query, since rows are skipped based on
+ * its value. NULL split-by values are not supported, since they can not be compared with the last value: the split
+ * of the rows with a NULL split-by value, which the input format creates if the column has no non-NULL values, is
+ * read with a single query, and a NULL value in any other split fails the split.
+ *
+ * @param <T> type of the records read
+ */
+public class KeysetDBRecordReader<T extends DBWritable> extends RecordReader<LongWritable, T> {
+  private static final Logger LOG = LoggerFactory.getLogger(KeysetDBRecordReader.class);
+  // number of consecutive times a chunk is queried again before the failure is propagated
+  private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+  private final Connection connection;
+  private final String splitBy;
+  private final String firstChunkQuery;
+  private final String nextChunkQuery;
+  private final int chunkSize;
+  // whether the split only contains the rows with a NULL split-by value, which are read with a single query
+  private final boolean nullSplit;
+  private final Integer fetchSize;
+  private final LongWritable key;
+  private final T value;
+
+  private PreparedStatement statement;
+  private ResultSet results;
+  private int keyColumn;
+  private boolean firstChunk;
+  private Object lastKey;
+  private int rowsInChunk;
+  private long pos;
+  private boolean done;
+
+  public KeysetDBRecordReader(DataDrivenDBInputFormat.DataDrivenDBInputSplit split, Class<T> inputClass,
+                              Configuration conf, Connection connection, String importQuery, String splitBy,
+                              int chunkSize, @Nullable Integer fetchSize) {
+    this.connection = connection;
+    this.splitBy = splitBy;
+    this.chunkSize = chunkSize;
+    this.fetchSize = fetchSize;
+    this.key = new LongWritable();
+    this.value = ReflectionUtils.newInstance(inputClass, conf);
+    this.nullSplit = split.getLowerClause().equals(splitBy + " IS NULL");
+    this.firstChunk = true;
+
+    String conditions = String.format("( %s ) AND ( %s )", split.getLowerClause(), split.getUpperClause());
+    this.firstChunkQuery = getChunkQuery(importQuery, conditions, splitBy);
+    this.nextChunkQuery = getChunkQuery(importQuery, String.format("%s AND ( %s > ? )", conditions, splitBy),
+                                        splitBy);
+  }
+
+  private static String getChunkQuery(String importQuery, String conditions, String splitBy) {
+    return importQuery.replace(DataDrivenDBInputFormat.SUBSTITUTE_TOKEN, conditions) + " ORDER BY " + splitBy;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) {
+    // everything is initialized in the constructor
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    int failures = 0;
+    while (true) {
+      try {
+        return nextRow();
+      } catch (SQLException e) {
+        closeChunk();
+        // the rows of the null split can not be skipped, so it can only be queried again if none were read
+        if (!isTransient(e) || (nullSplit && !firstChunk) || ++failures >= MAX_CHUNK_ATTEMPTS) {
+          throw new IOException(String.format("Failed to read the chunk after %s = %s.", splitBy, lastKey), e);
+        }
+        LOG.warn("Failed to read the chunk after {} = {}. Querying the chunk again.", splitBy, lastKey, e);
+      }
+    }
+  }
+
+  // transient failures, lost connections and rolled back transactions are worth querying the chunk again
+  private static boolean isTransient(SQLException e) {
+    String state = e.getSQLState();
+    return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+      || (state != null && (state.startsWith("08") || state.startsWith("40")));
+  }
+
+  private boolean nextRow() throws IOException, SQLException {
+    while (true) {
+      if (results == null) {
+        if (done) {
+          return false;
+        }
+        openChunk();
+      }
+      if (results.next()) {
+        value.readFields(results);
+        lastKey = results.getObject(keyColumn);
+        if (lastKey == null && !nullSplit) {
+          throw new IOException(String.format("Found a NULL value for %s, which is not supported when reading in " +
+                                                "chunks. Rows with NULL values must be excluded by the import query.",
+                                              splitBy));
+        }
+        firstChunk = false;
+        rowsInChunk++;
+        key.set(pos++);
+        return true;
+      }
+      // a chunk with fewer rows than the chunk size is the last one of the split
+      done = nullSplit || rowsInChunk < chunkSize;
+      results.close();
+      statement.close();
+      results = null;
+      statement = null;
+      connection.commit();
+    }
+  }
+
+  private void openChunk() throws SQLException {
+    String query = firstChunk ? firstChunkQuery : nextChunkQuery;
+    LOG.trace("Reading chunk of {} rows with query {} after {} = {}", chunkSize, query, splitBy, lastKey);
+    statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    if (!nullSplit) {
+      statement.setMaxRows(chunkSize);
+    }
+    if (fetchSize != null) {
+      statement.setFetchSize(fetchSize);
+    }
+    if (!firstChunk) {
+      statement.setObject(1, lastKey);
+    }
+    results = statement.executeQuery();
+    if (keyColumn == 0) {
+      // result set columns are labeled without the table qualifier of the split-by column
+      keyColumn = results.findColumn(splitBy.substring(splitBy.lastIndexOf('.') + 1));
+    }
+    rowsInChunk = 0;
+  }
+
+  // closes the statement of the current chunk after a failure, so that the chunk can be queried again
+  private void closeChunk() {
+    try {
+      if (statement != null) {
+        statement.close();
+      }
+      if (!connection.getAutoCommit()) {
+        connection.rollback();
+      }
+    } catch (SQLException e) {
+      LOG.debug("Failed to close the statement of the failed chunk.", e);
+    } finally {
+      results = null;
+      statement = null;
+    }
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public T getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() {
+    // the number of rows in the split is not known
+    return done ? 1.0f : 0.0f;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (statement != null) {
+        statement.close();
+      }
+      connection.commit();
+      connection.close();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+}
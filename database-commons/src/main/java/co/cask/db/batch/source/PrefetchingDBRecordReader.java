@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import co.cask.DBRecord;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * {@link RecordReader} that reads the records of another record reader on a separate thread, into a bounded buffer
+ * of decoded records. This overlaps fetching rows from the database with processing the previous rows in the
+ * pipeline, so that {@link #nextKeyValue()} usually only takes a record from the buffer.
+ * <p>
+ * The delegate reader is only used by the prefetching thread until it has been closed. The occupancy of the buffer
+ * is reported with the {@link Counters} of this class, which show whether reading from the database or processing
+ * the records is the bottleneck.
+ */
+public class PrefetchingDBRecordReader extends RecordReader<LongWritable, DBRecord> {
+  private static final Logger LOG = LoggerFactory.getLogger(PrefetchingDBRecordReader.class);
+  private static final Row END = new Row(-1L, null, null);
+
+  /**
+   * Counters reported by the prefetching record reader.
+   */
+  public enum Counters {
+    /**
+     * Records read from the buffer. Dividing {@link #BUFFERED_RECORDS} by this gives the average buffer depth.
+     */
+    RECORDS_READ,
+    /**
+     * Sum of the number of records in the buffer each time a record was read.
+     */
+    BUFFERED_RECORDS,
+    /**
+     * Number of times a record was read from an empty buffer, and had to wait for the database.
+     */
+    EMPTY_BUFFER_WAITS,
+    /**
+     * Number of times a record was fetched while the buffer was full, and had to wait for the pipeline.
+     */
+    FULL_BUFFER_WAITS
+  }
+
+  private final RecordReader<LongWritable, DBRecord> delegate;
+  private final BlockingQueue<Row> buffer;
+  private final AtomicLong fullBufferWaits;
+  private final LongWritable key;
+  private Thread prefetchThread;
+  private DBRecord value;
+  private volatile boolean closed;
+  private boolean done;
+  private Counter recordsRead;
+  private Counter bufferedRecords;
+  private Counter emptyBufferWaits;
+  private Counter fullBufferWaitsCounter;
+
+  public PrefetchingDBRecordReader(RecordReader<LongWritable, DBRecord> delegate, int bufferSize) {
+    this.delegate = delegate;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    this.fullBufferWaits = new AtomicLong();
+    this.key = new LongWritable();
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    delegate.initialize(split, context);
+    recordsRead = context.getCounter(Counters.RECORDS_READ);
+    bufferedRecords = context.getCounter(Counters.BUFFERED_RECORDS);
+    emptyBufferWaits = context.getCounter(Counters.EMPTY_BUFFER_WAITS);
+    fullBufferWaitsCounter = context.getCounter(Counters.FULL_BUFFER_WAITS);
+    prefetchThread = new Thread(this::prefetch, "db-record-prefetcher-" + split);
+    prefetchThread.setDaemon(true);
+    prefetchThread.start();
+  }
+
+  private void prefetch() {
+    Row last = END;
+    try {
+      while (!closed && delegate.nextKeyValue()) {
+        // the delegate re-uses the same key and value for every record, so only their contents are buffered
+        put(new Row(delegate.getCurrentKey().get(), delegate.getCurrentValue().getRecord(), null));
+      }
+    } catch (InterruptedException e) {
+      // interrupted by close()
+      return;
+    } catch (Throwable t) {
+      last = new Row(-1L, null, t);
+    }
+    try {
+      put(last);
+    } catch (InterruptedException e) {
+      // interrupted by close()
+    }
+  }
+
+  private void put(Row row) throws InterruptedException {
+    if (!buffer.offer(row)) {
+      fullBufferWaits.incrementAndGet();
+      buffer.put(row);
+    }
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    if (done) {
+      return false;
+    }
+    int buffered = buffer.size();
+    Row row = buffer.poll();
+    if (row == null) {
+      emptyBufferWaits.increment(1);
+      row = buffer.take();
+    }
+    if (row == END) {
+      done = true;
+      return false;
+    }
+    if (row.error != null) {
+      done = true;
+      throw new IOException("Failed to read records from the database.", row.error);
+    }
+    recordsRead.increment(1);
+    bufferedRecords.increment(buffered);
+    key.set(row.key);
+    value = new DBRecord(row.record, (int[]) null);
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public DBRecord getCurrentValue() {
+    return value;
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    return done ? 1.0f : 0.0f;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (prefetchThread != null) {
+      prefetchThread.interrupt();
+      try {
+        // the thread may be blocked on the database, wait for it so that the delegate is not closed while in use
+        prefetchThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.warn("Interrupted while waiting for the prefetching thread to stop.");
+      }
+      fullBufferWaitsCounter.increment(fullBufferWaits.get());
+    }
+    buffer.clear();
+    delegate.close();
+  }
+
+  /**
+   * A record taken from the delegate, the end of the records, or a failure to read the next record.
+   */
+  private static final class Row {
+    private final long key;
+    private final StructuredRecord record;
+    private final Throwable error;
+
+    private Row(long key, @Nullable StructuredRecord record, @Nullable Throwable error) {
+      this.key = key;
+      this.record = record;
+      this.error = error;
+    }
+  }
+}
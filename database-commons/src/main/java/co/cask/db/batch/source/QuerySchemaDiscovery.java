@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.source;
+
+import co.cask.DBUtils;
+import co.cask.cdap.api.data.schema.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Discovers the schema of the records of a query while reading as little as possible. The schema is taken from:
+ *
+ * <ol>
+ *   <li>the metadata of the query prepared as a statement, which most drivers get without executing the query</li>
+ *   <li>the metadata of a query that selects no rows of the query, {@code SELECT * FROM ( query ) WHERE 1 = 0},
+ *   for drivers that do not provide the metadata of prepared statements</li>
+ *   <li>the metadata of the query executed with at most one row, for queries that cannot be nested</li>
+ * </ol>
+ */
+final class QuerySchemaDiscovery {
+  private static final Logger LOG = LoggerFactory.getLogger(QuerySchemaDiscovery.class);
+
+  private QuerySchemaDiscovery() {
+  }
+
+  static Schema getSchema(Connection connection, String query) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(query)) {
+      ResultSetMetaData metadata = statement.getMetaData();
+      if (metadata != null && metadata.getColumnCount() > 0) {
+        return toSchema(metadata);
+      }
+      LOG.debug("The driver does not provide the metadata of query {} without executing it.", query);
+    } catch (SQLException e) {
+      LOG.debug("Unable to get the metadata of query {} without executing it.", query, e);
+    }
+
+    String emptyQuery = getEmptyQuery(query);
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(emptyQuery)) {
+      return toSchema(resultSet.getMetaData());
+    } catch (SQLException e) {
+      LOG.debug("Unable to get the metadata of query {} with query {}.", query, emptyQuery, e);
+    }
+
+    try (Statement statement = connection.createStatement()) {
+      statement.setMaxRows(1);
+      try (ResultSet resultSet = statement.executeQuery(query)) {
+        return toSchema(resultSet.getMetaData());
+      }
+    }
+  }
+
+  /**
+   * Returns a query that selects no rows of the given query. The derived table has an alias, since most databases
+   * require one, and the alias is not preceded by AS, since Oracle does not allow it.
+   */
+  static String getEmptyQuery(String query) {
+    return String.format("SELECT * FROM (%s) DISCOVERED_QUERY WHERE 1 = 0", stripSemicolons(query));
+  }
+
+  /**
+   * Returns the given query without its trailing semicolons, so that it can be nested in another query.
+   */
+  static String stripSemicolons(String query) {
+    String nested = query.trim();
+    while (nested.endsWith(";")) {
+      nested = nested.substring(0, nested.length() - 1).trim();
+    }
+    return nested;
+  }
+
+  private static Schema toSchema(ResultSetMetaData metadata) throws SQLException {
+    return Schema.recordOf("outputSchema", DBUtils.getSchemaFields(metadata));
+  }
+}
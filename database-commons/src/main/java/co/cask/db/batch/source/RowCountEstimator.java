@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.source;
+
+import co.cask.SqlDialect;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the number of rows returned by an import query, to choose the number of splits for a target number of
+ * rows per split.
+ * <p>
+ * The estimate is taken from the statistics of the database whenever possible, without reading any rows. For
+ * PostgreSQL, the estimate of the query planner is used. For other databases, if the import query reads a whole
+ * table, the row count of the table statistics is used: from the catalog for MySQL, Oracle and SQL Server, and from
+ * {@link DatabaseMetaData#getIndexInfo} otherwise. If there are no statistics, the rows of the import query are
+ * counted with a single COUNT query, with the '$CONDITIONS' of the import query covering the whole bounding range,
+ * which fails if it runs for more than {@link #QUERY_TIMEOUT_SECONDS}.
+ */
+final class RowCountEstimator {
+  // the number of splits is capped, so that a large estimate or a small number of rows per split
+  // does not run more tasks than the database can serve
+  static final int MAX_NUM_SPLITS = 1000;
+  static final int QUERY_TIMEOUT_SECONDS = 60;
+  private static final Logger LOG = LoggerFactory.getLogger(RowCountEstimator.class);
+  // the estimate of the top node of a PostgreSQL plan, e.g. 'Seq Scan on users  (cost=0.00..35.50 rows=2550 width=4)'
+  private static final Pattern PLAN_ROWS = Pattern.compile("\\brows=(\\d+)");
+  // an import query that reads all the rows of a single table, e.g. 'SELECT id, name FROM db.users WHERE $CONDITIONS'
+  private static final Pattern TABLE_QUERY = Pattern.compile(
+    "SELECT\\s+(?!(?:DISTINCT|TOP)\\b).+?\\s+FROM\\s+([\\w$.\"`\\[\\]]+)\\s+WHERE\\s+\\$CONDITIONS",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private RowCountEstimator() {
+  }
+
+  /**
+   * Returns the estimated number of rows of the given import query.
+   */
+  static long estimateRowCount(Connection connection, SqlDialect dialect, String importQuery) throws SQLException {
+    String query = QuerySchemaDiscovery.stripSemicolons(importQuery);
+    try {
+      Long rows = getStatisticsRows(connection, dialect, query);
+      if (rows != null) {
+        LOG.debug("Database statistics estimate {} rows for import query {}", rows, importQuery);
+        return rows;
+      }
+    } catch (SQLException e) {
+      LOG.debug("Unable to get the number of rows of the import query from the database statistics. " +
+                  "Counting the rows instead.", e);
+    }
+    try (Statement statement = connection.createStatement()) {
+      statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+      try (ResultSet rs = statement.executeQuery(String.format("SELECT COUNT(*) FROM (%s) t", getFullQuery(query)))) {
+        long rows = rs.next() ? rs.getLong(1) : 0L;
+        LOG.debug("Counted {} rows for import query {}", rows, importQuery);
+        return rows;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of splits that each contain about the given number of rows, at least one and at most
+   * {@link #MAX_NUM_SPLITS}.
+   */
+  static int getNumSplits(long rowCount, long rowsPerSplit) {
+    if (rowCount <= 0) {
+      return 1;
+    }
+    long numSplits = (rowCount - 1) / rowsPerSplit + 1;
+    return (int) Math.min(numSplits, MAX_NUM_SPLITS);
+  }
+
+  /**
+   * Returns the table read by the given import query, if it reads all the rows of a single table, or {@code null}
+   * otherwise.
+   */
+  @Nullable
+  static String getTableName(String importQuery) {
+    Matcher matcher = TABLE_QUERY.matcher(importQuery.trim());
+    return matcher.matches() ? matcher.group(1) : null;
+  }
+
+  /**
+   * Returns the number of rows estimated by the first line of a query plan, or {@code null} if it has no estimate.
+   */
+  @Nullable
+  static Long parsePlannedRows(@Nullable String planLine) {
+    if (planLine == null) {
+      return null;
+    }
+    Matcher matcher = PLAN_ROWS.matcher(planLine);
+    return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+  }
+
+  private static String getFullQuery(String query) {
+    return query.replace(DataDrivenDBInputFormat.SUBSTITUTE_TOKEN, "(1 = 1)");
+  }
+
+  @Nullable
+  private static Long getStatisticsRows(Connection connection, SqlDialect dialect,
+                                        String query) throws SQLException {
+    if (dialect == SqlDialect.POSTGRESQL) {
+      return getPlannedRows(connection, getFullQuery(query));
+    }
+    String tableName = getTableName(query);
+    if (tableName == null) {
+      return null;
+    }
+    switch (dialect) {
+      case MYSQL:
+        return getCatalogRows(connection, tableName,
+                              "SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                                "WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ?");
+      case ORACLE:
+        return getCatalogRows(connection, tableName,
+                              "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = COALESCE(?, USER) AND TABLE_NAME = ?");
+      case SQLSERVER:
+        return getPartitionRows(connection, tableName);
+      default:
+        return getIndexStatisticsRows(connection, tableName);
+    }
+  }
+
+  @Nullable
+  private static Long getPlannedRows(Connection connection, String query) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+      try (ResultSet rs = statement.executeQuery("EXPLAIN " + query)) {
+        return rs.next() ? parsePlannedRows(rs.getString(1)) : null;
+      }
+    }
+  }
+
+  /**
+   * Returns the rows of the given table from a catalog query, which has the schema, or null for the current one,
+   * and the table name as parameters.
+   */
+  @Nullable
+  private static Long getCatalogRows(Connection connection, String tableName,
+                                     String catalogQuery) throws SQLException {
+    String[] parts = splitTableName(connection, tableName);
+    try (PreparedStatement statement = connection.prepareStatement(catalogQuery)) {
+      statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+      statement.setString(1, parts.length > 1 ? parts[parts.length - 2] : null);
+      statement.setString(2, parts[parts.length - 1]);
+      return getLong(statement);
+    }
+  }
+
+  /**
+   * Returns the rows of the given SQL Server table from the partitions of its heap or clustered index.
+   */
+  @Nullable
+  private static Long getPartitionRows(Connection connection, String tableName) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+      "SELECT SUM(rows) FROM sys.partitions WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)")) {
+      statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+      statement.setString(1, tableName);
+      return getLong(statement);
+    }
+  }
+
+  /**
+   * Returns the rows of the given table from the table statistic of its index information, if the driver reports it.
+   */
+  @Nullable
+  private static Long getIndexStatisticsRows(Connection connection, String tableName) throws SQLException {
+    String[] parts = splitTableName(connection, tableName);
+    String catalog = parts.length > 2 ? parts[parts.length - 3] : null;
+    String schema = parts.length > 1 ? parts[parts.length - 2] : null;
+    try (ResultSet rs = connection.getMetaData().getIndexInfo(catalog, schema, parts[parts.length - 1],
+                                                              false, true)) {
+      while (rs.next()) {
+        if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+          long rows = rs.getLong("CARDINALITY");
+          return rs.wasNull() ? null : rows;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static Long getLong(PreparedStatement statement) throws SQLException {
+    try (ResultSet rs = statement.executeQuery()) {
+      if (!rs.next()) {
+        return null;
+      }
+      long value = rs.getLong(1);
+      return rs.wasNull() ? null : value;
+    }
+  }
+
+  /**
+   * Splits a possibly qualified table name into its parts, unquoting quoted parts and converting the case of the
+   * others to the case in which the database stores identifiers.
+   */
+  private static String[] splitTableName(Connection connection, String tableName) throws SQLException {
+    DatabaseMetaData metaData = connection.getMetaData();
+    String[] parts = tableName.split("\\.");
+    for (int i = 0; i < parts.length; i++) {
+      String part = parts[i];
+      if (part.length() > 1 && (part.startsWith("\"") || part.startsWith("`") || part.startsWith("["))) {
+        parts[i] = part.substring(1, part.length() - 1);
+      } else if (metaData.storesUpperCaseIdentifiers()) {
+        parts[i] = part.toUpperCase(Locale.ROOT);
+      } else if (metaData.storesLowerCaseIdentifiers()) {
+        parts[i] = part.toLowerCase(Locale.ROOT);
+      }
+    }
+    return parts;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Strategy used by the database source to generate splits from the min and max values of the split-by column.
+ */
+public enum SplitStrategy {
+  /**
+   * Splits the range between min and max into splits of equal width.
+   */
+  UNIFORM,
+  /**
+   * Splits the range between min and max into splits with roughly the same number of rows.
+   *
+   * @see HistogramSplitter
+   */
+  HISTOGRAM;
+
+  /**
+   * Translates a split strategy string to the corresponding strategy. Defaults to {@link #UNIFORM}
+   * if the given input is {@code null}.
+   */
+  public static SplitStrategy getStrategy(@Nullable String strategy) {
+    if (strategy == null) {
+      return UNIFORM;
+    }
+    return valueOf(strategy.toUpperCase());
+  }
+
+  /**
+   * Validates that the given strategy is either null or one of the possible split strategies.
+   *
+   * @param strategy the strategy to check
+   */
+  public static void validate(@Nullable String strategy) {
+    try {
+      getStrategy(strategy);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format(
+        "Split strategy must be one of the following values: %s, but got: %s.",
+        Arrays.toString(values()), strategy));
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit tests for {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+  private static final String URL = "jdbc:hsqldb:mem:connectionpooltest";
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, credentials());
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL)");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, credentials());
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+    }
+  }
+
+  @Test
+  public void testReuseConnection() throws Exception {
+    ConnectionPool pool = new ConnectionPool(2, 60000, 1000);
+    Connection first = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Connection physical = first.unwrap(Connection.class);
+    first.close();
+    Assert.assertTrue(first.isClosed());
+    // closing a returned connection again has no effect
+    first.close();
+
+    Connection second = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Assert.assertSame(physical, second.unwrap(Connection.class));
+    // connections with different arguments are not shared
+    Properties properties = credentials();
+    properties.put("hsqldb.default_table_type", "cached");
+    try (Connection other = pool.getConnection(JDBCDriver.class, URL, properties)) {
+      Assert.assertNotSame(physical, other.unwrap(Connection.class));
+    }
+    second.close();
+  }
+
+  @Test
+  public void testResetOnReturn() throws Exception {
+    ConnectionPool pool = new ConnectionPool(1, 60000, 1000);
+    try (Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials())) {
+      connection.setAutoCommit(false);
+      connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute("INSERT INTO ITEMS VALUES (1)");
+      }
+    }
+
+    try (Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials());
+         Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ITEMS")) {
+      Assert.assertTrue(connection.getAutoCommit());
+      Assert.assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+      // the uncommitted insert was rolled back
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(0, rs.getInt(1));
+    }
+  }
+
+  @Test
+  public void testValidateOnBorrow() throws Exception {
+    ConnectionPool pool = new ConnectionPool(1, 60000, 1000);
+    Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Connection physical = connection.unwrap(Connection.class);
+    connection.close();
+    // the idle connection is closed by the database
+    physical.close();
+
+    try (Connection other = pool.getConnection(JDBCDriver.class, URL, credentials())) {
+      Assert.assertNotSame(physical, other.unwrap(Connection.class));
+      Assert.assertFalse(other.isClosed());
+    }
+  }
+
+  @Test
+  public void testMaxSize() throws Exception {
+    ConnectionPool pool = new ConnectionPool(1, 60000, 100);
+    Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials());
+    try {
+      pool.getConnection(JDBCDriver.class, URL, credentials());
+      Assert.fail("Expected the pool to be full.");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    Thread thread = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+        connection.close();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    thread.start();
+    // a connection that is returned while waiting is borrowed
+    try (Connection other = pool.getConnection(JDBCDriver.class, URL, credentials())) {
+      Assert.assertFalse(other.isClosed());
+    }
+    thread.join();
+  }
+
+  @Test
+  public void testGetConnections() throws Exception {
+    ConnectionPool pool = new ConnectionPool(2, 60000, 100);
+    try {
+      pool.getConnections(JDBCDriver.class, URL, credentials(), 3);
+      Assert.fail("Expected more connections than the pool size to be rejected.");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials());
+    try {
+      // both connections are reserved together, so the one connection that is left is not borrowed on its own
+      pool.getConnections(JDBCDriver.class, URL, credentials(), 2);
+      Assert.fail("Expected the pool to be full.");
+    } catch (SQLException e) {
+      // expected
+    }
+    try (Connection other = pool.getConnection(JDBCDriver.class, URL, credentials())) {
+      Assert.assertFalse(other.isClosed());
+    }
+    connection.close();
+
+    List<Connection> connections = pool.getConnections(JDBCDriver.class, URL, credentials(), 2);
+    Assert.assertEquals(2, connections.size());
+    for (Connection borrowed : connections) {
+      borrowed.close();
+    }
+    pool.close(JDBCDriver.class);
+  }
+
+  @Test
+  public void testPoolArguments() throws Exception {
+    ConnectionPool pool = new ConnectionPool(1, 60000, 100);
+    Properties properties = credentials();
+    properties.put(ConnectionPool.MAX_SIZE, "2");
+    properties.put(ConnectionPool.BORROW_TIMEOUT_SECONDS, "1");
+    Assert.assertEquals(2, ConnectionPool.getMaxSize(properties));
+    Assert.assertEquals(ConnectionPool.DEFAULT_MAX_SIZE, ConnectionPool.getMaxSize(credentials()));
+
+    List<Connection> connections = pool.getConnections(JDBCDriver.class, URL, properties, 2);
+    for (Connection connection : connections) {
+      connection.close();
+    }
+
+    properties.put(ConnectionPool.MAX_SIZE, "0");
+    try {
+      ConnectionPool.getMaxSize(properties);
+      Assert.fail("Expected a maximum size of 0 to be rejected.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    pool.close(JDBCDriver.class);
+  }
+
+  @Test
+  public void testEvictIdle() throws Exception {
+    ConnectionPool pool = new ConnectionPool(2, 0, 1000);
+    Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Connection physical = connection.unwrap(Connection.class);
+    connection.close();
+    Thread.sleep(5);
+    pool.evictIdle();
+    Assert.assertTrue(physical.isClosed());
+    // the pool is dropped once its last connection is closed
+    Assert.assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    ConnectionPool pool = new ConnectionPool(2, 60000, 1000);
+    Connection idle = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Connection borrowed = pool.getConnection(JDBCDriver.class, URL, credentials());
+    Connection idlePhysical = idle.unwrap(Connection.class);
+    Connection borrowedPhysical = borrowed.unwrap(Connection.class);
+    idle.close();
+
+    pool.close(JDBCDriver.class);
+    Assert.assertEquals(0, pool.size());
+    Assert.assertTrue(idlePhysical.isClosed());
+    // a borrowed connection can still be used, and is closed when it is returned
+    Assert.assertFalse(borrowed.isClosed());
+    borrowed.close();
+    Assert.assertTrue(borrowedPhysical.isClosed());
+
+    // a new pool is created for the next connection
+    try (Connection connection = pool.getConnection(JDBCDriver.class, URL, credentials())) {
+      Assert.assertEquals(1, pool.size());
+      Assert.assertNotSame(idlePhysical, connection.unwrap(Connection.class));
+    }
+    pool.close(JDBCDriver.class);
+  }
+
+  private static Properties credentials() {
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    return properties;
+  }
+}
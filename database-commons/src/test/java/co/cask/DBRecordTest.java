@@ -0,0 +1,342 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+
+/**
+ * Unit tests for {@link DBRecord}.
+ */
+public class DBRecordTest {
+  private static Connection connection;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    Class.forName("org.hsqldb.jdbcDriver");
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:dbrecordtest", "SA", "");
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40), PRICE DOUBLE, QUANTITY BIGINT, " +
+                     "CREATED DATE, UPDATED TIMESTAMP)");
+      stmt.execute("INSERT INTO ITEMS VALUES (1, 'one', 1.5, 10, '2019-01-02', '2019-01-02 03:04:05')");
+      stmt.execute("INSERT INTO ITEMS VALUES (2, NULL, 2.5, NULL, NULL, NULL)");
+      stmt.execute("CREATE TABLE AMOUNTS (ID INT NOT NULL, SMALL DECIMAL(9, 0), MEDIUM NUMERIC(18, 0), " +
+                     "LARGE DECIMAL(25, 0), FRACTION DECIMAL(10, 2))");
+      stmt.execute("INSERT INTO AMOUNTS VALUES (1, 123456789, 123456789012345678, 1234567890123, 12.25)");
+      stmt.execute("INSERT INTO AMOUNTS VALUES (2, NULL, NULL, NULL, NULL)");
+      stmt.execute("CREATE TABLE FILES (ID SMALLINT NOT NULL, NAME VARCHAR(40), CONTENT BLOB, CREATED DATE)");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+      stmt.execute("DROP TABLE AMOUNTS");
+      stmt.execute("DROP TABLE FILES");
+    }
+    connection.close();
+  }
+
+  @Test
+  public void testReadFields() throws Exception {
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(new Configuration());
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME, PRICE, QUANTITY, CREATED, UPDATED " +
+                                            "FROM ITEMS ORDER BY ID")) {
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord first = dbRecord.getRecord();
+      Assert.assertEquals(1, (int) first.get("ID"));
+      Assert.assertEquals("one", first.get("NAME"));
+      Assert.assertEquals(1.5, first.<Double>get("PRICE"), 0.000001);
+      Assert.assertEquals(10L, (long) first.get("QUANTITY"));
+      Assert.assertEquals(LocalDate.of(2019, 1, 2), first.getDate("CREATED"));
+      Assert.assertEquals(LocalDateTime.of(2019, 1, 2, 3, 4, 5),
+                          first.getTimestamp("UPDATED", ZoneOffset.UTC).toLocalDateTime());
+
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord second = dbRecord.getRecord();
+      Assert.assertEquals(2, (int) second.get("ID"));
+      Assert.assertNull(second.get("NAME"));
+      Assert.assertNull(second.get("QUANTITY"));
+      Assert.assertNull(second.getDate("CREATED"));
+      Assert.assertNull(second.getTimestamp("UPDATED"));
+      Assert.assertSame(first.getSchema(), second.getSchema());
+    }
+  }
+
+  @Test
+  public void testReadFieldsWithOverrideSchema() throws Exception {
+    // subset of the columns, in a different order than the query
+    Schema schema = Schema.recordOf("override",
+                                    Schema.Field.of("PRICE", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+                                    Schema.Field.of("ID", Schema.of(Schema.Type.INT)));
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.OVERRIDE_SCHEMA, schema.toString());
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME, PRICE FROM ITEMS WHERE ID = 2")) {
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(2, record.getSchema().getFields().size());
+      Assert.assertEquals(2.5, record.<Double>get("PRICE"), 0.000001);
+      Assert.assertEquals(2, (int) record.get("ID"));
+    }
+  }
+
+  @Test
+  public void testSkipLargeLobsOfNonNullableFields() throws Exception {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE DOCUMENTS (ID INT NOT NULL, CONTENT BLOB NOT NULL, TEXT CLOB NOT NULL, " +
+                     "NOTE CLOB)");
+      stmt.execute("INSERT INTO DOCUMENTS VALUES (1, X'0102030405', '12345', '12345')");
+    }
+    Configuration conf = new Configuration();
+    conf.setInt(DBUtils.MAX_LOB_SIZE, 4);
+    conf.set(DBUtils.LOB_SIZE_POLICY, "skip");
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, CONTENT, TEXT, NOTE FROM DOCUMENTS")) {
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertFalse(record.getSchema().getField("CONTENT").getSchema().isNullable());
+      // values of fields that are not nullable are skipped by reading them as empty
+      Assert.assertArrayEquals(new byte[0], record.get("CONTENT"));
+      Assert.assertEquals("", record.get("TEXT"));
+      Assert.assertNull(record.get("NOTE"));
+    } finally {
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute("DROP TABLE DOCUMENTS");
+      }
+    }
+  }
+
+  @Test
+  public void testReadFieldsWithColumnNameCase() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.COLUMN_NAME_CASE, "lower");
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME FROM ITEMS WHERE ID = 1")) {
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(1, (int) record.get("id"));
+      Assert.assertEquals("one", record.get("name"));
+      Assert.assertNull(record.getSchema().getField("ID"));
+    }
+  }
+
+  @Test
+  public void testWriteWithPlan() throws Exception {
+    Schema schema = Schema.recordOf(
+      "dbRecord",
+      Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("CONTENT", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+      Schema.Field.of("CREATED", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))));
+    DBRecordWritePlan writePlan =
+      DBRecordWritePlan.create(schema, new int[] { Types.SMALLINT, Types.VARCHAR, Types.BLOB, Types.DATE });
+    byte[] content = { 1, 2, 3, 4 };
+    try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO FILES VALUES (?, ?, ?, ?)")) {
+      new DBRecord(StructuredRecord.builder(schema).set("ID", 1).set("NAME", "one").set("CONTENT", content)
+                     .setDate("CREATED", LocalDate.of(2019, 1, 2)).build(), writePlan).write(stmt);
+      stmt.executeUpdate();
+      // the bytes of a buffer are written from its position
+      new DBRecord(StructuredRecord.builder(schema).set("ID", 2).set("CONTENT", ByteBuffer.wrap(content, 1, 2))
+                     .build(), writePlan).write(stmt);
+      stmt.executeUpdate();
+    }
+
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME, CONTENT, CREATED FROM FILES ORDER BY ID")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(1, rs.getShort(1));
+      Assert.assertEquals("one", rs.getString(2));
+      Assert.assertArrayEquals(content, rs.getBytes(3));
+      Assert.assertEquals(LocalDate.of(2019, 1, 2), rs.getDate(4).toLocalDate());
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(2, rs.getShort(1));
+      Assert.assertNull(rs.getString(2));
+      Assert.assertArrayEquals(new byte[] { 2, 3 }, rs.getBytes(3));
+      Assert.assertNull(rs.getDate(4));
+      Assert.assertFalse(rs.next());
+    }
+  }
+
+  @Test
+  public void testReadDecimals() throws Exception {
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(new Configuration());
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT SMALL, MEDIUM, LARGE, FRACTION FROM AMOUNTS ORDER BY ID")) {
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(123456789, record.<Object>get("SMALL"));
+      Assert.assertEquals(123456789012345678L, record.<Object>get("MEDIUM"));
+      Assert.assertEquals(1234567890123L, record.<Object>get("LARGE"));
+      Assert.assertEquals(12.25, record.<Object>get("FRACTION"));
+
+      Assert.assertTrue(rs.next());
+      dbRecord.readFields(rs);
+      record = dbRecord.getRecord();
+      for (String field : new String[] { "SMALL", "MEDIUM", "LARGE", "FRACTION" }) {
+        Assert.assertNull(record.get(field));
+      }
+    }
+  }
+
+  @Test
+  public void testWritableRoundTrip() throws Exception {
+    Schema schema = Schema.recordOf(
+      "dbRecord",
+      Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("FLAG", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+      Schema.Field.of("COUNT", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+      Schema.Field.of("RATIO", Schema.nullableOf(Schema.of(Schema.Type.FLOAT))),
+      Schema.Field.of("PRICE", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+      Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("CONTENT", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+      Schema.Field.of("CREATED", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+      Schema.Field.of("UPDATED", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))));
+    StructuredRecord full = StructuredRecord.builder(schema)
+      .set("ID", -7).set("FLAG", true).set("COUNT", Long.MIN_VALUE).set("RATIO", 0.5f).set("PRICE", 1.25d)
+      .set("NAME", "na\u00efve \u2603").set("CONTENT", ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 }, 1, 2))
+      .setDate("CREATED", LocalDate.of(2019, 1, 2)).set("UPDATED", 1546398245000000L).build();
+    StructuredRecord empty = StructuredRecord.builder(schema).set("ID", 300).set("NAME", "").build();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      new DBRecord(full, (int[]) null).write(out);
+      new DBRecord(empty, (int[]) null).write(out);
+    }
+    // field count, null bitmap of 2 bytes, 3 byte vint for 300 and the length of the empty string
+    Assert.assertEquals(1 + 2 + 3 + 1, bytes.size() - serializedSize(full));
+
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.RECORD_SCHEMA, schema.toString());
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      dbRecord.readFields(in);
+      StructuredRecord record = dbRecord.getRecord();
+      Assert.assertEquals(-7, (int) record.get("ID"));
+      Assert.assertTrue(record.get("FLAG"));
+      Assert.assertEquals(Long.MIN_VALUE, (long) record.get("COUNT"));
+      Assert.assertEquals(0.5f, record.<Float>get("RATIO"), 0.000001f);
+      Assert.assertEquals(1.25d, record.<Double>get("PRICE"), 0.000001d);
+      Assert.assertEquals("na\u00efve \u2603", record.get("NAME"));
+      Assert.assertArrayEquals(new byte[] { 1, 2 }, record.get("CONTENT"));
+      Assert.assertEquals(LocalDate.of(2019, 1, 2), record.getDate("CREATED"));
+      Assert.assertEquals(1546398245000000L, (long) record.get("UPDATED"));
+
+      dbRecord.readFields(in);
+      record = dbRecord.getRecord();
+      Assert.assertEquals(300, (int) record.get("ID"));
+      Assert.assertEquals("", record.get("NAME"));
+      for (String field : new String[] { "FLAG", "COUNT", "RATIO", "PRICE", "CONTENT", "CREATED", "UPDATED" }) {
+        Assert.assertNull(record.get(field));
+      }
+      Assert.assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  public void testWriteDeserializedRecord() throws Exception {
+    Schema schema = Schema.recordOf(
+      "dbRecord",
+      Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("CONTENT", Schema.nullableOf(Schema.of(Schema.Type.BYTES))),
+      Schema.Field.of("CREATED", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      new DBRecord(StructuredRecord.builder(schema).set("ID", 10).set("CONTENT", new byte[] { 5, 6 })
+                     .setDate("CREATED", LocalDate.of(2019, 3, 4)).build(), (int[]) null).write(out);
+    }
+
+    // the column types are needed to write the record to a table
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.RECORD_SCHEMA, schema.toString());
+    conf.set(DBUtils.RECORD_COLUMN_TYPES, String.format("%d,%d,%d,%d", Types.SMALLINT, Types.VARCHAR, Types.BLOB,
+                                                        Types.DATE));
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(conf);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+         PreparedStatement stmt = connection.prepareStatement("INSERT INTO FILES VALUES (?, ?, ?, ?)")) {
+      dbRecord.readFields(in);
+      dbRecord.write(stmt);
+      stmt.executeUpdate();
+    }
+
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME, CONTENT, CREATED FROM FILES WHERE ID = 10")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertNull(rs.getString(2));
+      Assert.assertArrayEquals(new byte[] { 5, 6 }, rs.getBytes(3));
+      Assert.assertEquals(LocalDate.of(2019, 3, 4), rs.getDate(4).toLocalDate());
+      stmt.execute("DELETE FROM FILES WHERE ID = 10");
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadFieldsWithoutSchema() throws Exception {
+    DBRecord dbRecord = new DBRecord();
+    dbRecord.setConf(new Configuration());
+    dbRecord.readFields(new DataInputStream(new ByteArrayInputStream(new byte[] { 0 })));
+  }
+
+  private static int serializedSize(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      new DBRecord(record, (int[]) null).write(out);
+    }
+    return bytes.size();
+  }
+}
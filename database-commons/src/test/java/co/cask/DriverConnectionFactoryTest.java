@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Unit tests for {@link DriverConnectionFactory}.
+ */
+public class DriverConnectionFactoryTest {
+
+  @Test
+  public void testConnect() throws Exception {
+    Assert.assertSame(DriverConnectionFactory.getDriver(JDBCDriver.class),
+                      DriverConnectionFactory.getDriver(JDBCDriver.class));
+    Properties properties = new Properties();
+    properties.put("user", "SA");
+    properties.put("password", "");
+    try (Connection connection = DriverConnectionFactory.connect(JDBCDriver.class,
+                                                                 "jdbc:hsqldb:mem:driverconnectiontest", properties)) {
+      Assert.assertTrue(connection.isValid(1));
+    }
+  }
+
+  @Test(expected = SQLException.class)
+  public void testConnectionStringOfOtherDriver() throws Exception {
+    DriverConnectionFactory.connect(JDBCDriver.class, "jdbc:postgresql://localhost/db", new Properties());
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * Unit tests for {@link LobReader}.
+ */
+public class LobReaderTest {
+  private static final byte[] BYTES = "0123456789".getBytes(StandardCharsets.UTF_8);
+  private static final String CHARS = "0123456789";
+
+  @Test
+  public void testReadWithinLimit() throws Exception {
+    LobReader reader = new LobReader(10, LobSizePolicy.FAIL);
+    Assert.assertArrayEquals(BYTES, reader.read(new SerialBlob(BYTES), "blob"));
+    Assert.assertEquals(CHARS, reader.read(new SerialClob(CHARS.toCharArray()), "clob"));
+    Assert.assertArrayEquals(new byte[0], reader.read(new SerialBlob(new byte[0]), "blob"));
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    LobReader reader = new LobReader(9, LobSizePolicy.SKIP);
+    Assert.assertNull(reader.read(new SerialBlob(BYTES), "blob"));
+    Assert.assertNull(reader.read(new SerialClob(CHARS.toCharArray()), "clob"));
+  }
+
+  @Test
+  public void testSkipNonNullable() throws Exception {
+    LobReader reader = new LobReader(9, LobSizePolicy.SKIP).forField(false);
+    Assert.assertArrayEquals(new byte[0], reader.read(new SerialBlob(BYTES), "blob"));
+    Assert.assertEquals("", reader.read(new SerialClob(CHARS.toCharArray()), "clob"));
+    // values within the limit are still read
+    Assert.assertArrayEquals("0".getBytes(StandardCharsets.UTF_8),
+                             reader.read(new SerialBlob("0".getBytes(StandardCharsets.UTF_8)), "blob"));
+  }
+
+  @Test
+  public void testTruncate() throws Exception {
+    LobReader reader = new LobReader(4, LobSizePolicy.TRUNCATE);
+    Assert.assertArrayEquals("0123".getBytes(StandardCharsets.UTF_8), reader.read(new SerialBlob(BYTES), "blob"));
+    Assert.assertEquals("0123", reader.read(new SerialClob(CHARS.toCharArray()), "clob"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFailBlob() throws Exception {
+    new LobReader(9, LobSizePolicy.FAIL).read(new SerialBlob(BYTES), "blob");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFailClob() throws Exception {
+    new LobReader(9, LobSizePolicy.FAIL).read(new SerialClob(CHARS.toCharArray()), "clob");
+  }
+}
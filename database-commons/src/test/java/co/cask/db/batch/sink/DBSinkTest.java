@@ -16,19 +16,34 @@
 
 package co.cask.db.batch.sink;
 
+import co.cask.ConnectionPool;
 import co.cask.DBRecord;
+import co.cask.DBUtils;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.etl.mock.common.MockEmitter;
+import co.cask.db.batch.source.DBSource;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -130,6 +145,162 @@ public class DBSinkTest {
     }
   }
 
+  @Test
+  public void testOutputSchemaPerInputSchema() throws Exception {
+    final DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "body,ts";
+    config.tableName = "foo";
+
+    DBSink sink = new DBSink(config);
+    sink.setColumns(ImmutableList.copyOf(Splitter.on(",").split(config.columns)));
+
+    Schema schema1 = Schema.recordOf(
+      "foo",
+      Schema.Field.of("ts", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("body", Schema.of(Schema.Type.STRING)));
+    Schema schema2 = Schema.recordOf(
+      "foo",
+      Schema.Field.of("ts", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("body", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+    MockEmitter<KeyValue<DBRecord, NullWritable>> emitter = new MockEmitter<>();
+    sink.transform(StructuredRecord.builder(schema1).set("ts", 1L).set("body", "a").build(), emitter);
+    sink.transform(StructuredRecord.builder(schema1).set("ts", 2L).set("body", "b").build(), emitter);
+    sink.transform(StructuredRecord.builder(schema2).set("ts", 3L).build(), emitter);
+
+    Assert.assertEquals(3, emitter.getEmitted().size());
+    StructuredRecord first = emitter.getEmitted().get(0).getKey().getRecord();
+    StructuredRecord second = emitter.getEmitted().get(1).getKey().getRecord();
+    StructuredRecord third = emitter.getEmitted().get(2).getKey().getRecord();
+    Assert.assertSame(first.getSchema(), second.getSchema());
+    Assert.assertEquals("b", second.get("body"));
+    Assert.assertEquals(2L, (long) second.get("ts"));
+    Assert.assertNotEquals(first.getSchema(), third.getSchema());
+    Assert.assertTrue(third.getSchema().getField("body").getSchema().isNullable());
+    Assert.assertNull(third.get("body"));
+  }
+
+  @Test
+  public void testDeserializeRecordsWithOutputConfiguration() throws Exception {
+    DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "body,ts";
+    config.tableName = "foo";
+    config.connectionString = "jdbc:hsqldb:mem:dbsinktest";
+
+    DBSink sink = new DBSink(config);
+    List<String> columns = ImmutableList.copyOf(Splitter.on(",").split(config.columns));
+    sink.setColumns(columns);
+    Schema inputSchema = Schema.recordOf(
+      "foo",
+      Schema.Field.of("ts", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("headers", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("body", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    MockEmitter<KeyValue<DBRecord, NullWritable>> emitter = new MockEmitter<>();
+    sink.transform(StructuredRecord.builder(inputSchema).set("ts", 123L).set("body", "sdfsdf")
+                     .set("headers", ImmutableMap.of("hello", "zzz")).build(), emitter);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      emitter.getEmitted().get(0).getKey().write(out);
+    }
+
+    // the records emitted by the sink can be read with the configuration of its output format
+    DBSink.DBOutputFormatProvider provider = new DBSink.DBOutputFormatProvider(
+      config, Driver.class, null, config.tableName, new int[] { Types.VARCHAR, Types.BIGINT },
+      DBSink.getOutputSchema(inputSchema, columns));
+    Configuration conf = new Configuration();
+    for (Map.Entry<String, String> entry : provider.getOutputFormatConfiguration().entrySet()) {
+      conf.set(entry.getKey(), entry.getValue());
+    }
+    DBRecord record = new DBRecord();
+    record.setConf(conf);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      record.readFields(in);
+    }
+    Assert.assertEquals("sdfsdf", record.getRecord().get("body"));
+    Assert.assertEquals(123L, (long) record.getRecord().get("ts"));
+  }
+
+  @Test
+  public void testDeserializeSourceRecordsWithColumnNameCase() throws Exception {
+    Schema schema = Schema.recordOf(
+      "items",
+      Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    Configuration conf = new Configuration();
+    conf.set(DBUtils.OVERRIDE_SCHEMA, schema.toString());
+    conf.set(DBUtils.COLUMN_NAME_CASE, "lower");
+    DBRecord record = new DBRecord();
+    record.setConf(conf);
+    try (Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:dbsinktest", "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40))");
+      stmt.execute("INSERT INTO ITEMS VALUES (1, 'one')");
+      try (ResultSet rs = stmt.executeQuery("SELECT ID, NAME FROM ITEMS")) {
+        Assert.assertTrue(rs.next());
+        record.readFields(rs);
+      } finally {
+        stmt.execute("DROP TABLE ITEMS");
+      }
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      record.write(out);
+    }
+
+    // the records read by the source can be deserialized with the schema it configures
+    conf.set(DBUtils.RECORD_SCHEMA, DBSource.getRecordSchema(schema, "lower").toString());
+    DBRecord deserialized = new DBRecord();
+    deserialized.setConf(conf);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      deserialized.readFields(in);
+    }
+    Assert.assertEquals(1, (int) deserialized.getRecord().get("id"));
+    Assert.assertEquals("one", deserialized.getRecord().get("name"));
+  }
+
+  @Test
+  public void testValidateBulkLoadOperation() {
+    DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "ts,body";
+    config.tableName = "foo";
+    config.keyColumns = "ts";
+    config.operation = "insert";
+    config.validate(MultiRowInsertBulkLoader.class);
+
+    config.operation = "upsert";
+    config.validate(null);
+    try {
+      config.validate(MultiRowInsertBulkLoader.class);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    // the bulk loader is not used if rejected records are skipped
+    config.errorHandling = "skip";
+    config.validate(MultiRowInsertBulkLoader.class);
+  }
+
+  @Test
+  public void testValidateNumConnections() {
+    DBSink.DBSinkConfig config = new DBSink.DBSinkConfig();
+    config.columns = "ts,body";
+    config.tableName = "foo";
+    config.numConnections = ConnectionPool.DEFAULT_MAX_SIZE;
+    config.validate(null);
+
+    config.numConnections = ConnectionPool.DEFAULT_MAX_SIZE + 1;
+    try {
+      config.validate(null);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    config.connectionArguments = ConnectionPool.MAX_SIZE + "=64";
+    config.validate(null);
+  }
+
   public Map<String, Object> getRecordFields(StructuredRecord record) {
     Map<String, Object> fields = Maps.newHashMap();
     for (Schema.Field field : record.getSchema().getFields()) {
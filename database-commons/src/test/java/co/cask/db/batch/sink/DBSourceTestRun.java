@@ -218,6 +218,38 @@ public class DBSourceTestRun extends DatabasePluginTestBase {
     Assert.assertEquals(2, row2.<Integer>get("id").intValue());
   }
 
+  @Test
+  public void testDBSourceWithFetchSize() throws Exception {
+    String importQuery = "SELECT ID, NAME FROM \"my_table\" WHERE $CONDITIONS";
+    String boundingQuery = "SELECT MIN(ID),MAX(ID) from \"my_table\"";
+    String splitBy = "ID";
+    ETLPlugin sourceConfig = new ETLPlugin(
+      "Database",
+      BatchSource.PLUGIN_TYPE,
+      ImmutableMap.<String, String>builder()
+        .put(DBConfig.CONNECTION_STRING, getConnectionURL())
+        .put(DBSource.DBSourceConfig.IMPORT_QUERY, importQuery)
+        .put(DBSource.DBSourceConfig.BOUNDING_QUERY, boundingQuery)
+        .put(DBSource.DBSourceConfig.SPLIT_BY, splitBy)
+        .put(DBSource.DBSourceConfig.FETCH_SIZE, "2")
+        .put(DBConfig.JDBC_PLUGIN_NAME, "hypersql")
+        .put(Constants.Reference.REFERENCE_NAME, "DBFetchSizeTest")
+        .build(),
+      null
+    );
+
+    String outputDatasetName = "output-fetchsizetest";
+    ETLPlugin sinkConfig = MockSink.getPlugin(outputDatasetName);
+
+    ApplicationManager appManager = deployETL(sourceConfig, sinkConfig, "testDBSourceWithFetchSize");
+    runETLOnce(appManager);
+
+    // all records should be read, across multiple fetches
+    DataSetManager<Table> outputManager = getDataset(outputDatasetName);
+    List<StructuredRecord> outputRecords = MockSink.readOutput(outputManager);
+    Assert.assertEquals(5, outputRecords.size());
+  }
+
   @Test
   public void testDbSourceMultipleTables() throws Exception {
     // have the same data in both tables ('\"my_table\"' and '\"your_table\"'), and select the ID and NAME fields from
@@ -0,0 +1,318 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.sink;
+
+import co.cask.DBRecord;
+import co.cask.DBUtils;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.db.DBConfiguration;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Unit tests for {@link ETLDBOutputFormat}.
+ */
+public class ETLDBOutputFormatTest {
+  private static final String URL = "jdbc:hsqldb:mem:etldboutputformattest";
+  private static final Schema SCHEMA = Schema.recordOf(
+    "dbRecord",
+    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("NAME", Schema.of(Schema.Type.STRING)));
+  private static final int[] COLUMN_TYPES = { Types.INTEGER, Types.VARCHAR };
+
+  @Before
+  public void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE OUTPUT (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(40))");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE OUTPUT");
+    }
+  }
+
+  @Test
+  public void testWriteWithBatchSize() throws Exception {
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    write(conf, 5);
+    Assert.assertEquals(5, countRows());
+  }
+
+  @Test
+  public void testWriteWithBatchBytes() throws Exception {
+    Configuration conf = createConf();
+    // every record is estimated at more than 10 bytes, so each record is executed on its own
+    conf.setLong(ETLDBOutputFormat.BATCH_BYTES, 10L);
+    write(conf, 3);
+    Assert.assertEquals(3, countRows());
+  }
+
+  @Test
+  public void testWriteNothing() throws Exception {
+    write(createConf(), 0);
+    Assert.assertEquals(0, countRows());
+  }
+
+  @Test
+  public void testUpsertIsIdempotent() throws Exception {
+    Configuration conf = createConf();
+    conf.set(ETLDBOutputFormat.OPERATION, "upsert");
+    conf.set(ETLDBOutputFormat.KEY_COLUMNS, "ID");
+    write(conf, 3);
+    write(conf, 3, "new");
+    Assert.assertEquals(3, countRows());
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM OUTPUT WHERE NAME LIKE 'new%'")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(3, rs.getInt(1));
+    }
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    write(createConf(), 2);
+    Configuration conf = createConf();
+    conf.set(ETLDBOutputFormat.OPERATION, "update");
+    conf.set(ETLDBOutputFormat.KEY_COLUMNS, "ID");
+    // the third record does not have a row to update
+    write(conf, 3, "new");
+    Assert.assertEquals(2, countRows());
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM OUTPUT WHERE NAME LIKE 'new%'")) {
+      Assert.assertTrue(rs.next());
+      Assert.assertEquals(2, rs.getInt(1));
+    }
+  }
+
+  @Test
+  public void testParallelWrite() throws Exception {
+    setMvcc();
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.NUM_CONNECTIONS, 3);
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    conf.set(ETLDBOutputFormat.OPERATION, "upsert");
+    conf.set(ETLDBOutputFormat.KEY_COLUMNS, "ID");
+    write(conf, 20);
+    Assert.assertEquals(20, countRows());
+    assertNames(20);
+  }
+
+  @Test
+  public void testParallelWriteRollsBackAllConnections() throws Exception {
+    setMvcc();
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.NUM_CONNECTIONS, 3);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordWriter<DBRecord, NullWritable> writer = new ETLDBOutputFormat<DBRecord, NullWritable>()
+      .getRecordWriter(context);
+    try {
+      for (int i = 0; i < 10; i++) {
+        writer.write(createRecord(i, "name"), null);
+      }
+      // the duplicate key fails one of the connections
+      writer.write(createRecord(4, "name"), null);
+    } finally {
+      try {
+        writer.close(context);
+        Assert.fail("Expected the duplicate key to fail the task.");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+    Assert.assertEquals(0, countRows());
+  }
+
+  @Test
+  public void testSkipRejectedRecords() throws Exception {
+    Configuration conf = createConf();
+    conf.set(ETLDBOutputFormat.ERROR_HANDLING, "skip");
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 4);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordWriter<DBRecord, NullWritable> writer = new ETLDBOutputFormat<DBRecord, NullWritable>()
+      .getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(createRecord(i, "name"), null);
+      // every key is written twice, and the second record is rejected
+      writer.write(createRecord(i, "duplicate"), null);
+    }
+    writer.close(context);
+    Assert.assertEquals(5, countRows());
+    assertNames(5);
+  }
+
+  @Test
+  public void testCommitInterval() throws Exception {
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    conf.setLong(ETLDBOutputFormat.COMMIT_INTERVAL, 2L);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordWriter<DBRecord, NullWritable> writer = new ETLDBOutputFormat<DBRecord, NullWritable>()
+      .getRecordWriter(context);
+    for (int i = 0; i < 5; i++) {
+      writer.write(createRecord(i, "name"), null);
+    }
+    try {
+      // the duplicate key fails the third batch
+      writer.write(createRecord(4, "name"), null);
+      Assert.fail("Expected the duplicate key to fail the batch.");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      writer.close(context);
+    } catch (IOException e) {
+      // expected, since the failed batch cannot be committed
+    }
+    // the first two batches were committed before the failure
+    Assert.assertEquals(4, countRows());
+  }
+
+  @Test
+  public void testMultiRowInsert() throws Exception {
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 4);
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 3);
+    // two statements with three records each, and one with the remaining two records
+    write(conf, 8);
+    Assert.assertEquals(8, countRows());
+    assertNames(8);
+  }
+
+  @Test
+  public void testMultiRowInsertWithinParameterLimit() throws Exception {
+    Configuration conf = createConf();
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 10);
+    // only two records with two fields fit into a statement
+    conf.setInt(ETLDBOutputFormat.MAX_PARAMETERS, 5);
+    write(conf, 5);
+    Assert.assertEquals(5, countRows());
+    assertNames(5);
+  }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    Configuration conf = createConf();
+    conf.setClass(ETLDBOutputFormat.BULK_LOADER, MultiRowInsertBulkLoader.class, BulkLoader.class);
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 4);
+    conf.setInt(ETLDBOutputFormat.ROWS_PER_INSERT, 3);
+    write(conf, 10);
+    Assert.assertEquals(10, countRows());
+    assertNames(10);
+  }
+
+  @Test
+  public void testWriteWithColumnTypesFromConf() throws Exception {
+    Configuration conf = createConf();
+    conf.set(DBUtils.RECORD_COLUMN_TYPES, Types.INTEGER + "," + Types.VARCHAR);
+    conf.setInt(ETLDBOutputFormat.BATCH_SIZE, 2);
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordWriter<DBRecord, NullWritable> writer = new ETLDBOutputFormat<DBRecord, NullWritable>()
+      .getRecordWriter(context);
+    for (int i = 0; i < 3; i++) {
+      // the records do not know the types of the columns, which are taken from the configuration
+      StructuredRecord record = StructuredRecord.builder(SCHEMA).set("ID", i).set("NAME", "name" + i).build();
+      writer.write(new DBRecord(record, (int[]) null), null);
+    }
+    writer.close(context);
+    assertNames(3);
+  }
+
+  private void write(Configuration conf, int numRecords) throws Exception {
+    write(conf, numRecords, "name");
+  }
+
+  private void write(Configuration conf, int numRecords, String namePrefix) throws Exception {
+    TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+    RecordWriter<DBRecord, NullWritable> writer = new ETLDBOutputFormat<DBRecord, NullWritable>()
+      .getRecordWriter(context);
+    for (int i = 0; i < numRecords; i++) {
+      writer.write(createRecord(i, namePrefix), null);
+    }
+    writer.close(context);
+  }
+
+  private static DBRecord createRecord(int id, String namePrefix) {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("ID", id).set("NAME", namePrefix + id).build();
+    return new DBRecord(record, COLUMN_TYPES);
+  }
+
+  private static Configuration createConf() {
+    Configuration conf = new Configuration();
+    conf.set(DBConfiguration.DRIVER_CLASS_PROPERTY, "org.hsqldb.jdbcDriver");
+    conf.set(DBConfiguration.URL_PROPERTY, URL);
+    conf.set(DBConfiguration.USERNAME_PROPERTY, "SA");
+    conf.set(DBConfiguration.PASSWORD_PROPERTY, "");
+    conf.set(DBConfiguration.OUTPUT_TABLE_NAME_PROPERTY, "OUTPUT");
+    conf.set(DBConfiguration.OUTPUT_FIELD_NAMES_PROPERTY, "ID,NAME");
+    return conf;
+  }
+
+  // lets several connections write to the table concurrently
+  private static void setMvcc() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+    }
+  }
+
+  private static void assertNames(int numRecords) throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME FROM OUTPUT ORDER BY ID")) {
+      for (int i = 0; i < numRecords; i++) {
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(i, rs.getInt(1));
+        Assert.assertEquals("name" + i, rs.getString(2));
+      }
+      Assert.assertFalse(rs.next());
+    }
+  }
+
+  private static int countRows() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM OUTPUT")) {
+      Assert.assertTrue(rs.next());
+      return rs.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.DBRecord;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link RejectingBatchExecutor}.
+ */
+public class RejectingBatchExecutorTest {
+  private static final String URL = "jdbc:hsqldb:mem:rejectingbatchexecutortest";
+  private static final String INSERT = "INSERT INTO OUTPUT (ID, NAME) VALUES (?, ?)";
+  private static final Schema SCHEMA = Schema.recordOf(
+    "dbRecord",
+    Schema.Field.of("ID", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("NAME", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+  private static final int[] COLUMN_TYPES = { Types.INTEGER, Types.VARCHAR };
+
+  private Connection connection;
+  private Counter rejectedRecords;
+
+  @Before
+  public void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    connection = DriverManager.getConnection(URL, "SA", "");
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE OUTPUT (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(40) NOT NULL)");
+    }
+    connection.setAutoCommit(false);
+    rejectedRecords = new Counters().findCounter(ETLDBOutputFormat.Counters.REJECTED_RECORDS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.setAutoCommit(true);
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE OUTPUT");
+    }
+    connection.close();
+  }
+
+  @Test
+  public void testSkipRejectedRecords() throws Exception {
+    List<DBRecord> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(createRecord(i, "name" + i));
+    }
+    // a duplicate key and a null name are rejected
+    records.add(3, createRecord(7, "duplicate"));
+    records.add(createRecord(10, null));
+    records.add(createRecord(11, "name11"));
+
+    try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+      RejectingBatchExecutor executor = new RejectingBatchExecutor(connection, statement, null, rejectedRecords);
+      Assert.assertEquals(2, executor.execute(records));
+    }
+    Assert.assertEquals(2, rejectedRecords.getValue());
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT ID, NAME FROM OUTPUT ORDER BY ID")) {
+      for (int i = 0; i < 12; i++) {
+        if (i == 10) {
+          continue;
+        }
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(i, rs.getInt(1));
+        // the first record with a key is written, and the later one is rejected
+        Assert.assertEquals(i == 7 ? "duplicate" : "name" + i, rs.getString(2));
+      }
+      Assert.assertFalse(rs.next());
+    }
+  }
+
+  @Test
+  public void testRetryTransientFailure() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+      // the first execution fails with a deadlock
+      PreparedStatement failingStatement = (PreparedStatement) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class[] { PreparedStatement.class }, (proxy, method, args) -> {
+          if (method.getName().equals("executeBatch") && executions.incrementAndGet() == 1) {
+            throw new SQLTransactionRollbackException("Deadlock", "40001");
+          }
+          try {
+            return method.invoke(statement, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+      RejectingBatchExecutor executor =
+        new RejectingBatchExecutor(connection, failingStatement, null, rejectedRecords);
+      List<DBRecord> records = new ArrayList<>();
+      records.add(createRecord(1, "name1"));
+      records.add(createRecord(2, "name2"));
+      Assert.assertEquals(0, executor.execute(records));
+    }
+    Assert.assertEquals(2, executions.get());
+    Assert.assertEquals(0, rejectedRecords.getValue());
+  }
+
+  @Test
+  public void testPropagateOtherFailures() throws Exception {
+    // a missing column fails every record, so the records must not be rejected one by one
+    try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+      PreparedStatement failingStatement = (PreparedStatement) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+          if (method.getName().equals("executeBatch")) {
+            throw new BatchUpdateException("user lacks privilege or object not found: NAME", "42501", new int[0]);
+          }
+          try {
+            return method.invoke(statement, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+      RejectingBatchExecutor executor =
+        new RejectingBatchExecutor(connection, failingStatement, null, rejectedRecords);
+      List<DBRecord> records = new ArrayList<>();
+      records.add(createRecord(1, "name1"));
+      records.add(createRecord(2, "name2"));
+      try {
+        executor.execute(records);
+        Assert.fail("Expected the failure to be propagated.");
+      } catch (SQLException e) {
+        Assert.assertEquals("42501", e.getSQLState());
+      }
+    }
+    Assert.assertEquals(0, rejectedRecords.getValue());
+  }
+
+  @Test
+  public void testIsRejection() {
+    Assert.assertTrue(RejectingBatchExecutor.isRejection(new SQLException("unique constraint", "23505"), 1));
+    Assert.assertTrue(RejectingBatchExecutor.isRejection(new SQLException("invalid number", "22018"), 1));
+    Assert.assertTrue(RejectingBatchExecutor.isRejection(new SQLIntegrityConstraintViolationException("dup"), 1));
+    // drivers without SQL states
+    Assert.assertTrue(RejectingBatchExecutor.isRejection(new BatchUpdateException(new int[] { 1 }), 2));
+    Assert.assertFalse(RejectingBatchExecutor.isRejection(new SQLException("no such column", "42703"), 1));
+    Assert.assertFalse(RejectingBatchExecutor.isRejection(new SQLException("connection reset", "08006"), 1));
+    Assert.assertFalse(RejectingBatchExecutor.isRejection(
+      new BatchUpdateException("connection reset", "08006", new int[] { 1 }), 2));
+    // the data error may be reported by the next exception of the batch failure
+    SQLException batchFailure = new BatchUpdateException("batch failed", "HY000", new int[0]);
+    batchFailure.setNextException(new SQLException("unique constraint", "23505"));
+    Assert.assertTrue(RejectingBatchExecutor.isRejection(batchFailure, 2));
+  }
+
+  @Test
+  public void testGetFailedRecord() {
+    // drivers that stop at the failed record
+    Assert.assertEquals(2, RejectingBatchExecutor.getFailedRecord(new BatchUpdateException(new int[] { 1, 1 }), 5));
+    // drivers that continue after the failed record
+    int[] updateCounts = { 1, Statement.EXECUTE_FAILED, 1, Statement.EXECUTE_FAILED };
+    Assert.assertEquals(1, RejectingBatchExecutor.getFailedRecord(new BatchUpdateException(updateCounts), 4));
+    Assert.assertEquals(-1, RejectingBatchExecutor.getFailedRecord(new BatchUpdateException(new int[] { 1, 1 }), 2));
+    Assert.assertEquals(-1, RejectingBatchExecutor.getFailedRecord(new SQLException("failed"), 2));
+  }
+
+  @Test
+  public void testIsTransient() {
+    Assert.assertTrue(RejectingBatchExecutor.isTransient(new SQLTransactionRollbackException("deadlock")));
+    Assert.assertTrue(RejectingBatchExecutor.isTransient(new SQLException("serialization failure", "40001")));
+    Assert.assertFalse(RejectingBatchExecutor.isTransient(new SQLException("unique constraint", "23505")));
+  }
+
+  private static DBRecord createRecord(int id, String name) {
+    StructuredRecord record = StructuredRecord.builder(SCHEMA).set("ID", id).set("NAME", name).build();
+    return new DBRecord(record, COLUMN_TYPES);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.sink;
+
+import co.cask.SqlDialect;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Unit tests for {@link StagingTable}.
+ */
+public class StagingTableTest {
+  private static final String URL = "jdbc:hsqldb:mem:stagingtabletest";
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE OUTPUT (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(40), SCORE INT)");
+      stmt.execute("INSERT INTO OUTPUT VALUES (1, 'name1', 1)");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE OUTPUT");
+    }
+  }
+
+  @Test
+  public void testPublish() throws Exception {
+    StagingTable stagingTable = new StagingTable(SqlDialect.GENERIC, "OUTPUT", "OUTPUT_STAGING_1", "ID,NAME");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stagingTable.create(connection);
+      // the staging table is empty, and does not have the primary key of the table
+      Assert.assertEquals(0, count(stmt, "OUTPUT_STAGING_1"));
+      stmt.execute("INSERT INTO OUTPUT_STAGING_1 VALUES (2, 'name2'), (3, 'name3')");
+      Assert.assertEquals(1, count(stmt, "OUTPUT"));
+
+      stagingTable.publish(connection);
+      Assert.assertEquals(3, count(stmt, "OUTPUT"));
+
+      stagingTable.drop(connection);
+      try (ResultSet rs = connection.getMetaData().getTables(null, null, "OUTPUT_STAGING_1", null)) {
+        Assert.assertFalse(rs.next());
+      }
+    }
+  }
+
+  @Test
+  public void testCreateQuery() {
+    Assert.assertEquals("SELECT ID,NAME INTO T_STAGING FROM T WHERE 1 = 0",
+                        new StagingTable(SqlDialect.SQLSERVER, "T", "T_STAGING", "ID,NAME").getCreateQuery());
+    Assert.assertEquals("CREATE TABLE T_STAGING AS SELECT ID,NAME FROM T WHERE 1 = 0",
+                        new StagingTable(SqlDialect.POSTGRESQL, "T", "T_STAGING", "ID,NAME").getCreateQuery());
+  }
+
+  @Test
+  public void testGetName() {
+    String name = StagingTable.getName("OUTPUT", 1546300800000L, StagingTable.MAX_NAME_LENGTH);
+    Assert.assertTrue(name, name.matches("OUTPUT_STG_[0-9a-f]{8}"));
+    // every run has its own staging table
+    Assert.assertNotEquals(name, StagingTable.getName("OUTPUT", 1546300800001L, StagingTable.MAX_NAME_LENGTH));
+
+    // long table names are truncated, and the schema and quotes are kept
+    String longName = StagingTable.getName("DB.\"CUSTOMER_ORDER_HISTORY\"", 1546300800000L,
+                                           StagingTable.MAX_NAME_LENGTH);
+    Assert.assertTrue(longName, longName.matches("DB\\.\"CUSTOMER_ORDER_HI_STG_[0-9a-f]{8}\""));
+    Assert.assertEquals(StagingTable.MAX_NAME_LENGTH, longName.length() - "DB.\"\"".length());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetNameTooShort() {
+    StagingTable.getName("OUTPUT", 1546300800000L, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPhoenixIsNotSupported() {
+    new StagingTable(SqlDialect.PHOENIX, "T", "T_STAGING", "ID,NAME");
+  }
+
+  private static int count(Statement stmt, String table) throws Exception {
+    try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+      Assert.assertTrue(rs.next());
+      return rs.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.sink;
+
+import co.cask.SqlDialect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link WriteQuery}.
+ */
+public class WriteQueryTest {
+
+  @Test
+  public void testInsert() {
+    WriteQuery query = WriteQuery.insert("OUTPUT", new String[] { "ID", " NAME" }, 3);
+    Assert.assertEquals("INSERT INTO OUTPUT (ID, NAME) VALUES (?, ?), (?, ?), (?, ?)", query.getQuery());
+    Assert.assertNull(query.getParameterFields());
+  }
+
+  @Test
+  public void testInsertWithoutColumnNames() {
+    WriteQuery query = WriteQuery.insert("OUTPUT", new String[2], 1);
+    Assert.assertEquals("INSERT INTO OUTPUT VALUES (?, ?)", query.getQuery());
+  }
+
+  @Test
+  public void testMerge() {
+    WriteQuery query = WriteQuery.merge("OUTPUT", new String[] { "ID", " NAME", " SCORE" }, new String[] { "id" });
+    Assert.assertEquals(
+      "MERGE INTO OUTPUT T USING (VALUES (1)) AS S (X) ON (T.ID = ?) " +
+        "WHEN MATCHED THEN UPDATE SET NAME = ?, SCORE = ? " +
+        "WHEN NOT MATCHED THEN INSERT (ID, NAME, SCORE) VALUES (?, ?, ?)",
+      query.getQuery());
+    Assert.assertArrayEquals(new int[] { 0, 1, 2, 0, 1, 2 }, query.getParameterFields());
+  }
+
+  @Test
+  public void testMergeOnlyKeyColumns() {
+    WriteQuery query = WriteQuery.merge("OUTPUT", new String[] { "A", "B" }, new String[] { "B", "A" });
+    Assert.assertEquals(
+      "MERGE INTO OUTPUT T USING (VALUES (1)) AS S (X) ON (T.B = ? AND T.A = ?) " +
+        "WHEN NOT MATCHED THEN INSERT (A, B) VALUES (?, ?)",
+      query.getQuery());
+    Assert.assertArrayEquals(new int[] { 1, 0, 0, 1 }, query.getParameterFields());
+  }
+
+  @Test
+  public void testUpsertDialects() {
+    String[] columns = { "ID", "NAME" };
+    String[] keyColumns = { "ID" };
+    Assert.assertEquals(
+      "INSERT INTO OUTPUT (ID, NAME) VALUES (?, ?) ON CONFLICT (ID) DO UPDATE SET NAME = EXCLUDED.NAME",
+      WriteQuery.upsert(SqlDialect.POSTGRESQL, "OUTPUT", columns, keyColumns).getQuery());
+    Assert.assertEquals(
+      "INSERT INTO OUTPUT (ID, NAME) VALUES (?, ?) ON DUPLICATE KEY UPDATE NAME = VALUES(NAME)",
+      WriteQuery.upsert(SqlDialect.MYSQL, "OUTPUT", columns, keyColumns).getQuery());
+    Assert.assertEquals(
+      "MERGE INTO OUTPUT T USING DUAL ON (T.ID = ?) WHEN MATCHED THEN UPDATE SET NAME = ? " +
+        "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (?, ?)",
+      WriteQuery.upsert(SqlDialect.ORACLE, "OUTPUT", columns, keyColumns).getQuery());
+    Assert.assertEquals(
+      "MERGE INTO OUTPUT T USING (VALUES (1)) AS S (X) ON (T.ID = ?) WHEN MATCHED THEN UPDATE SET NAME = ? " +
+        "WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (?, ?);",
+      WriteQuery.upsert(SqlDialect.SQLSERVER, "OUTPUT", columns, keyColumns).getQuery());
+    Assert.assertEquals(WriteQuery.merge("OUTPUT", columns, keyColumns).getQuery(),
+                        WriteQuery.upsert(SqlDialect.GENERIC, "OUTPUT", columns, keyColumns).getQuery());
+  }
+
+  @Test
+  public void testUpsertOnlyKeyColumns() {
+    String[] columns = { "ID" };
+    Assert.assertEquals(
+      "INSERT INTO OUTPUT (ID) VALUES (?) ON CONFLICT (ID) DO NOTHING",
+      WriteQuery.upsert(SqlDialect.POSTGRESQL, "OUTPUT", columns, columns).getQuery());
+    Assert.assertEquals(
+      "INSERT INTO OUTPUT (ID) VALUES (?) ON DUPLICATE KEY UPDATE ID = ID",
+      WriteQuery.upsert(SqlDialect.MYSQL, "OUTPUT", columns, columns).getQuery());
+  }
+
+  @Test
+  public void testUpdate() {
+    WriteQuery query = WriteQuery.update("OUTPUT", new String[] { "ID", "NAME", "SCORE" }, new String[] { "ID" });
+    Assert.assertEquals("UPDATE OUTPUT SET NAME = ?, SCORE = ? WHERE ID = ?", query.getQuery());
+    Assert.assertArrayEquals(new int[] { 1, 2, 0 }, query.getParameterFields());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUpdateOnlyKeyColumns() {
+    WriteQuery.update("OUTPUT", new String[] { "ID" }, new String[] { "ID" });
+  }
+
+  @Test
+  public void testDialectFromConnectionString() {
+    Assert.assertEquals(SqlDialect.POSTGRESQL, SqlDialect.fromConnectionString("jdbc:postgresql://localhost/db"));
+    Assert.assertEquals(SqlDialect.MYSQL, SqlDialect.fromConnectionString("jdbc:mysql://localhost/db"));
+    Assert.assertEquals(SqlDialect.ORACLE, SqlDialect.fromConnectionString("jdbc:oracle:thin:@localhost:1521:db"));
+    Assert.assertEquals(SqlDialect.SQLSERVER, SqlDialect.fromConnectionString("jdbc:sqlserver://localhost"));
+    Assert.assertEquals(SqlDialect.GENERIC, SqlDialect.fromConnectionString("jdbc:hsqldb:mem:db"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeMissingKeyColumn() {
+    WriteQuery.merge("OUTPUT", new String[] { "A", "B" }, new String[] { "C" });
+  }
+}
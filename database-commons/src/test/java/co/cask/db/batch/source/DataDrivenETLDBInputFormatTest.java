@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.source;
+
+import co.cask.DBRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.apache.hadoop.mapreduce.lib.db.OracleDBRecordReader;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link DataDrivenETLDBInputFormat}.
+ */
+public class DataDrivenETLDBInputFormatTest {
+  private static final String URL = "jdbc:hsqldb:mem:datadriveninputformattest";
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40))");
+      stmt.execute("INSERT INTO ITEMS VALUES (1, 'one')");
+      stmt.execute("INSERT INTO ITEMS VALUES (2, 'two')");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOracleSessionTimeZone() throws Exception {
+    AtomicReference<String> sessionTimeZone = new AtomicReference<>();
+    Connection oracleConnection = createOracleConnection(sessionTimeZone);
+    Configuration conf = new Configuration();
+    DataDrivenETLDBInputFormat.setInput(conf, DBRecord.class, "SELECT ID, NAME FROM ITEMS WHERE $CONDITIONS",
+                                        "SELECT MIN(ID), MAX(ID) FROM ITEMS", false);
+    conf.set(OracleDBRecordReader.SESSION_TIMEZONE_KEY, "America/New_York");
+    DataDrivenETLDBInputFormat format = new DataDrivenETLDBInputFormat() {
+      @Override
+      public Connection getConnection() {
+        // the product name of the database is read from the field when the format is configured
+        connection = oracleConnection;
+        return oracleConnection;
+      }
+    };
+    format.setConf(conf);
+
+    RecordReader<?, DBRecord> reader = format.createDBRecordReader(
+      new DataDrivenDBInputFormat.DataDrivenDBInputSplit("1=1", "1=1"), conf);
+    List<Integer> ids = new ArrayList<>();
+    try {
+      while (reader.nextKeyValue()) {
+        ids.add(reader.getCurrentValue().getRecord().<Integer>get("ID"));
+      }
+    } finally {
+      reader.close();
+    }
+    Assert.assertEquals("America/New_York", sessionTimeZone.get());
+    Assert.assertEquals(2, ids.size());
+  }
+
+  /**
+   * Creates a connection that reports to be connected to Oracle, wrapping the connection of the driver like a
+   * pooled connection does, and that records the time zone of the session.
+   */
+  private static Connection createOracleConnection(AtomicReference<String> sessionTimeZone) throws Exception {
+    Connection connection = DriverManager.getConnection(URL, "SA", "");
+    DatabaseMetaData metaData = connection.getMetaData();
+    DatabaseMetaData oracleMetaData = (DatabaseMetaData) Proxy.newProxyInstance(
+      DataDrivenETLDBInputFormatTest.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+      (proxy, method, args) -> {
+        if (method.getName().equals("getDatabaseProductName")) {
+          return "Oracle";
+        }
+        try {
+          return method.invoke(metaData, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+    OracleConnection driverConnection = (OracleConnection) Proxy.newProxyInstance(
+      DataDrivenETLDBInputFormatTest.class.getClassLoader(), new Class<?>[] { OracleConnection.class },
+      (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setSessionTimeZone":
+            sessionTimeZone.set((String) args[0]);
+            return null;
+          case "getMetaData":
+            return oracleMetaData;
+          case "unwrap":
+            return proxy;
+          default:
+            try {
+              return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+        }
+      });
+    // a wrapper without the setSessionTimeZone method, like the connections of the pool
+    return (Connection) Proxy.newProxyInstance(
+      DataDrivenETLDBInputFormatTest.class.getClassLoader(), new Class<?>[] { Connection.class },
+      (proxy, method, args) -> {
+        try {
+          return method.invoke(driverConnection, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+  }
+
+  /**
+   * The method of the Oracle connection that sets the time zone of the session.
+   */
+  public interface OracleConnection extends Connection {
+    void setSessionTimeZone(String timeZone);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.db.DBSplitter;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link HistogramSplitter}.
+ */
+public class HistogramSplitterTest {
+  private static final int NUM_SPLITS = 4;
+  private static Connection connection;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:histogramsplittertest", "SA", "");
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE SKEWED (ID INT NOT NULL, NAME VARCHAR(40))");
+    }
+    // 90 rows with ids 1 to 90 and 10 rows with ids 1000 to 10000
+    try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO SKEWED VALUES (?, ?)")) {
+      for (int i = 1; i <= 100; i++) {
+        int id = i <= 90 ? i : (i - 90) * 1000;
+        stmt.setInt(1, id);
+        stmt.setString(2, "name" + id);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE SKEWED");
+    }
+    connection.close();
+  }
+
+  @Test
+  public void testSplitsHaveEqualRowCounts() throws Exception {
+    List<InputSplit> splits = split("SELECT ID, NAME FROM SKEWED WHERE $CONDITIONS", null);
+    Assert.assertEquals(NUM_SPLITS, splits.size());
+    for (InputSplit split : splits) {
+      Assert.assertEquals(25, countRows((DataDrivenDBInputFormat.DataDrivenDBInputSplit) split));
+    }
+  }
+
+  @Test
+  public void testFallbackIfColumnNotSelected() throws Exception {
+    List<InputSplit> fallbackSplits = Collections.singletonList(
+      new DataDrivenDBInputFormat.DataDrivenDBInputSplit("1 = 1", "1 = 1"));
+    List<InputSplit> splits = split("SELECT NAME FROM SKEWED WHERE $CONDITIONS",
+                                    (conf, results, colName) -> fallbackSplits);
+    Assert.assertSame(fallbackSplits, splits);
+  }
+
+  @Test
+  public void testGetBoundaries() {
+    // all rows in the first and the last bucket
+    List<Long> boundaries = HistogramSplitter.getBoundaries(new long[] {10, 0, 0, 10}, 2, 0, 39, 10);
+    Assert.assertEquals(ImmutableList.of(0L, 10L, 39L), boundaries);
+    // a single bucket that contains the rows of several splits does not produce empty splits
+    boundaries = HistogramSplitter.getBoundaries(new long[] {0, 100, 0, 0}, 4, 0, 39, 10);
+    Assert.assertEquals(ImmutableList.of(0L, 20L, 39L), boundaries);
+    Assert.assertTrue(HistogramSplitter.getBoundaries(new long[] {0, 0}, 2, 0, 19, 10).isEmpty());
+  }
+
+  private List<InputSplit> split(String importQuery, DBSplitter fallback) throws SQLException {
+    Configuration conf = new Configuration();
+    conf.setInt(MRJobConfig.NUM_MAPS, NUM_SPLITS);
+    HistogramSplitter splitter = new HistogramSplitter(connection, importQuery, fallback);
+    try (Statement stmt = connection.createStatement();
+         ResultSet bounds = stmt.executeQuery("SELECT MIN(ID), MAX(ID) FROM SKEWED")) {
+      Assert.assertTrue(bounds.next());
+      return splitter.split(conf, bounds, "SKEWED.ID");
+    }
+  }
+
+  private int countRows(DataDrivenDBInputFormat.DataDrivenDBInputSplit split) throws SQLException {
+    String query = String.format("SELECT COUNT(*) FROM SKEWED WHERE %s AND %s",
+                                 split.getLowerClause(), split.getUpperClause());
+    try (Statement stmt = connection.createStatement();
+         ResultSet rs = stmt.executeQuery(query)) {
+      Assert.assertTrue(rs.next());
+      return rs.getInt(1);
+    }
+  }
+}
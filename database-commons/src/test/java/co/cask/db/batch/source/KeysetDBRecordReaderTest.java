@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import co.cask.DBRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.lib.db.DataDrivenDBInputFormat;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link KeysetDBRecordReader}.
+ */
+public class KeysetDBRecordReaderTest {
+  private static final String URL = "jdbc:hsqldb:mem:keysetreadertest";
+  private static final String IMPORT_QUERY = "SELECT ID, NAME FROM ITEMS WHERE $CONDITIONS";
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40))");
+      // ids are not inserted in order
+      for (int i = 10; i >= 1; i--) {
+        stmt.execute(String.format("INSERT INTO ITEMS VALUES (%d, 'name%d')", i, i));
+      }
+      stmt.execute("CREATE TABLE NULLABLE_ITEMS (ID INT, NAME VARCHAR(40))");
+      stmt.execute("INSERT INTO NULLABLE_ITEMS VALUES (1, 'name1')");
+      stmt.execute("INSERT INTO NULLABLE_ITEMS VALUES (NULL, 'null1')");
+      stmt.execute("INSERT INTO NULLABLE_ITEMS VALUES (NULL, 'null2')");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+      stmt.execute("DROP TABLE NULLABLE_ITEMS");
+    }
+  }
+
+  @Test
+  public void testReadInChunks() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    Connection connection = createConnection(queries, -1);
+    // 7 rows in the split, read in chunks of 3
+    Assert.assertEquals(range(2, 8), read(connection, "ITEMS.ID >= 2", "ITEMS.ID <= 8", 3));
+    Assert.assertEquals(3, queries.get());
+  }
+
+  @Test
+  public void testLastChunkIsFull() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    Connection connection = createConnection(queries, -1);
+    Assert.assertEquals(range(1, 10), read(connection, "1=1", "1=1", 5));
+    // the third query returns no rows
+    Assert.assertEquals(3, queries.get());
+  }
+
+  @Test
+  public void testResumeAfterFailure() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    // the query of the second chunk fails once
+    Connection connection = createConnection(queries, 2);
+    Assert.assertEquals(range(1, 10), read(connection, "ITEMS.ID >= 1", "ITEMS.ID <= 10", 4));
+    Assert.assertEquals(4, queries.get());
+  }
+
+  @Test
+  public void testPermanentFailureIsNotRetried() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    Connection connection = createConnection(queries, 2, new SQLException("Invalid value"));
+    try {
+      read(connection, "ITEMS.ID >= 1", "ITEMS.ID <= 10", 4);
+      Assert.fail("Expected the failure to be propagated.");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(2, queries.get());
+  }
+
+  @Test
+  public void testReadNullSplit() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    Connection connection = createConnection(queries, -1);
+    // the null split is read with a single query, even though it has more rows than the chunk size
+    Assert.assertEquals(Arrays.asList("null1", "null2"),
+                        readNames(connection, "NULLABLE_ITEMS.ID IS NULL", "NULLABLE_ITEMS.ID IS NULL", 1));
+    Assert.assertEquals(1, queries.get());
+  }
+
+  @Test
+  public void testNullKeyFails() throws Exception {
+    AtomicInteger queries = new AtomicInteger();
+    Connection connection = createConnection(queries, -1);
+    try {
+      readNames(connection, "1=1", "1=1", 1);
+      Assert.fail("Expected the NULL value to fail the split.");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(1, queries.get());
+  }
+
+  private List<Integer> read(Connection connection, String lowerClause, String upperClause,
+                             int chunkSize) throws Exception {
+    DataDrivenDBInputFormat.DataDrivenDBInputSplit split =
+      new DataDrivenDBInputFormat.DataDrivenDBInputSplit(lowerClause, upperClause);
+    KeysetDBRecordReader<DBRecord> reader =
+      new KeysetDBRecordReader<>(split, DBRecord.class, new Configuration(), connection, IMPORT_QUERY, "ITEMS.ID",
+                                 chunkSize, null);
+    List<Integer> ids = new ArrayList<>();
+    try {
+      while (reader.nextKeyValue()) {
+        Assert.assertEquals(ids.size(), reader.getCurrentKey().get());
+        ids.add(reader.getCurrentValue().getRecord().<Integer>get("ID"));
+      }
+    } finally {
+      reader.close();
+    }
+    return ids;
+  }
+
+  private List<String> readNames(Connection connection, String lowerClause, String upperClause,
+                                 int chunkSize) throws Exception {
+    DataDrivenDBInputFormat.DataDrivenDBInputSplit split =
+      new DataDrivenDBInputFormat.DataDrivenDBInputSplit(lowerClause, upperClause);
+    KeysetDBRecordReader<DBRecord> reader =
+      new KeysetDBRecordReader<>(split, DBRecord.class, new Configuration(), connection,
+                                 "SELECT ID, NAME FROM NULLABLE_ITEMS WHERE $CONDITIONS", "NULLABLE_ITEMS.ID",
+                                 chunkSize, null);
+    List<String> names = new ArrayList<>();
+    try {
+      while (reader.nextKeyValue()) {
+        names.add(reader.getCurrentValue().getRecord().get("NAME"));
+      }
+    } finally {
+      reader.close();
+    }
+    return names;
+  }
+
+  private static Connection createConnection(AtomicInteger queries, int failingQuery) throws SQLException {
+    return createConnection(queries, failingQuery, new SQLException("Connection reset", "08S01"));
+  }
+
+  /**
+   * Creates a connection that counts the statements it prepares, and that fails to prepare the statement with the
+   * given number once, with the given exception.
+   */
+  private static Connection createConnection(AtomicInteger queries, int failingQuery,
+                                             SQLException failure) throws SQLException {
+    Connection connection = DriverManager.getConnection(URL, "SA", "");
+    connection.setAutoCommit(false);
+    return (Connection) Proxy.newProxyInstance(
+      KeysetDBRecordReaderTest.class.getClassLoader(), new Class[] { Connection.class }, (proxy, method, args) -> {
+        if (method.getName().equals("prepareStatement") && queries.incrementAndGet() == failingQuery) {
+          throw failure;
+        }
+        try {
+          return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+  }
+
+  private static List<Integer> range(int from, int to) {
+    List<Integer> ids = new ArrayList<>();
+    for (int i = from; i <= to; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.db.batch.source;
+
+import co.cask.DBRecord;
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link PrefetchingDBRecordReader}.
+ */
+public class PrefetchingDBRecordReaderTest {
+  private static final Schema SCHEMA = Schema.recordOf("dbRecord", Schema.Field.of("ID", Schema.of(Schema.Type.INT)));
+
+  @Test
+  public void testReadAll() throws Exception {
+    Counters counters = new Counters();
+    TestRecordReader delegate = new TestRecordReader(100, false);
+    RecordReader<LongWritable, DBRecord> reader = new PrefetchingDBRecordReader(delegate, 8);
+    reader.initialize(null, createContext(counters));
+    try {
+      for (int i = 0; i < 100; i++) {
+        Assert.assertTrue(reader.nextKeyValue());
+        Assert.assertEquals(i, reader.getCurrentKey().get());
+        Assert.assertEquals(i, (int) reader.getCurrentValue().getRecord().get("ID"));
+      }
+      Assert.assertFalse(reader.nextKeyValue());
+      Assert.assertFalse(reader.nextKeyValue());
+    } finally {
+      reader.close();
+    }
+    Assert.assertTrue(delegate.closed);
+    Assert.assertEquals(100, counters.findCounter(PrefetchingDBRecordReader.Counters.RECORDS_READ).getValue());
+  }
+
+  @Test
+  public void testFailurePropagated() throws Exception {
+    TestRecordReader delegate = new TestRecordReader(3, true);
+    RecordReader<LongWritable, DBRecord> reader = new PrefetchingDBRecordReader(delegate, 8);
+    reader.initialize(null, createContext(new Counters()));
+    try {
+      for (int i = 0; i < 3; i++) {
+        Assert.assertTrue(reader.nextKeyValue());
+      }
+      reader.nextKeyValue();
+      Assert.fail("Expected the failure of the delegate to be propagated.");
+    } catch (IOException e) {
+      Assert.assertEquals("Connection reset", e.getCause().getMessage());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testCloseBeforeEnd() throws Exception {
+    // the prefetching thread is blocked on the full buffer when the reader is closed
+    TestRecordReader delegate = new TestRecordReader(1000, false);
+    RecordReader<LongWritable, DBRecord> reader = new PrefetchingDBRecordReader(delegate, 2);
+    reader.initialize(null, createContext(new Counters()));
+    Assert.assertTrue(reader.nextKeyValue());
+    reader.close();
+    Assert.assertTrue(delegate.closed);
+  }
+
+  private static TaskAttemptContext createContext(Counters counters) {
+    return new TaskAttemptContextImpl(new Configuration(), new TaskAttemptID(), new StatusReporter() {
+      @Override
+      public Counter getCounter(Enum<?> name) {
+        return counters.findCounter(name);
+      }
+
+      @Override
+      public Counter getCounter(String group, String name) {
+        return counters.findCounter(group, name);
+      }
+
+      @Override
+      public void progress() {
+      }
+
+      @Override
+      public float getProgress() {
+        return 0;
+      }
+
+      @Override
+      public void setStatus(String status) {
+      }
+    });
+  }
+
+  /**
+   * Record reader that returns records with increasing ids, re-using the same key and value like the
+   * database record readers.
+   */
+  private static class TestRecordReader extends RecordReader<LongWritable, DBRecord> {
+    private final int numRecords;
+    private final boolean fail;
+    private final LongWritable key = new LongWritable();
+    private DBRecord value;
+    private int pos;
+    private volatile boolean closed;
+
+    TestRecordReader(int numRecords, boolean fail) {
+      this.numRecords = numRecords;
+      this.fail = fail;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      if (pos == numRecords) {
+        if (fail) {
+          throw new IOException("Connection reset");
+        }
+        return false;
+      }
+      key.set(pos);
+      value = new DBRecord(StructuredRecord.builder(SCHEMA).set("ID", pos).build(), (int[]) null);
+      pos++;
+      return true;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+      return key;
+    }
+
+    @Override
+    public DBRecord getCurrentValue() {
+      return value;
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.source;
+
+import co.cask.cdap.api.data.schema.Schema;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link QuerySchemaDiscovery}.
+ */
+public class QuerySchemaDiscoveryTest {
+  private static final String URL = "jdbc:hsqldb:mem:queryschemadiscoverytest";
+  private static final String QUERY = "SELECT ID, NAME FROM ITEMS ORDER BY NAME";
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40))");
+      stmt.execute("INSERT INTO ITEMS VALUES (1, 'one')");
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+         Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+    }
+  }
+
+  @Test
+  public void testPreparedStatementMetadata() throws Exception {
+    List<String> executed = new ArrayList<>();
+    try (Connection connection = createConnection(executed, false)) {
+      assertSchema(QuerySchemaDiscovery.getSchema(connection, QUERY));
+    }
+    // the query is not executed
+    Assert.assertTrue(executed.isEmpty());
+  }
+
+  @Test
+  public void testEmptyQuery() throws Exception {
+    List<String> executed = new ArrayList<>();
+    try (Connection connection = createConnection(executed, true)) {
+      assertSchema(QuerySchemaDiscovery.getSchema(connection, QUERY + ";"));
+    }
+    Assert.assertEquals(1, executed.size());
+    Assert.assertEquals("SELECT * FROM (" + QUERY + ") DISCOVERED_QUERY WHERE 1 = 0", executed.get(0));
+  }
+
+  private static void assertSchema(Schema schema) {
+    Assert.assertEquals(2, schema.getFields().size());
+    // drivers do not always report the nullability of the columns of a query
+    Assert.assertEquals(Schema.Type.INT, getType(schema.getField("ID").getSchema()));
+    Assert.assertEquals(Schema.Type.STRING, getType(schema.getField("NAME").getSchema()));
+  }
+
+  private static Schema.Type getType(Schema schema) {
+    return schema.isNullable() ? schema.getNonNullable().getType() : schema.getType();
+  }
+
+  /**
+   * Creates a connection that records the queries it executes, and that fails to prepare statements if the
+   * driver is supposed to not provide their metadata.
+   */
+  private static Connection createConnection(List<String> executed, boolean failPrepare) throws SQLException {
+    Connection connection = DriverManager.getConnection(URL, "SA", "");
+    return (Connection) Proxy.newProxyInstance(
+      QuerySchemaDiscoveryTest.class.getClassLoader(), new Class[] { Connection.class }, (proxy, method, args) -> {
+        if (method.getName().equals("prepareStatement") && failPrepare) {
+          throw new SQLException("Metadata of prepared statements is not supported");
+        }
+        try {
+          Object result = method.invoke(connection, args);
+          if (method.getName().equals("createStatement")) {
+            return recordQueries((Statement) result, executed);
+          }
+          return result;
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+  }
+
+  private static Statement recordQueries(Statement statement, List<String> executed) {
+    return (Statement) Proxy.newProxyInstance(
+      QuerySchemaDiscoveryTest.class.getClassLoader(), new Class[] { Statement.class }, (proxy, method, args) -> {
+        if (method.getName().startsWith("execute") && args != null && args.length > 0) {
+          executed.add((String) args[0]);
+        }
+        try {
+          return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+  }
+}
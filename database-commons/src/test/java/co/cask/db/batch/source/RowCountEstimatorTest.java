@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.db.batch.source;
+
+import co.cask.SqlDialect;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Unit tests for {@link RowCountEstimator}.
+ */
+public class RowCountEstimatorTest {
+  private static Connection connection;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    Class.forName("org.hsqldb.jdbcDriver");
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:rowcountestimatortest", "SA", "");
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("CREATE TABLE ITEMS (ID INT NOT NULL, NAME VARCHAR(40))");
+    }
+    try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO ITEMS VALUES (?, ?)")) {
+      for (int i = 1; i <= 25; i++) {
+        stmt.setInt(1, i);
+        stmt.setString(2, "name" + i);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("DROP TABLE ITEMS");
+    }
+    connection.close();
+  }
+
+  @Test
+  public void testCountRows() throws Exception {
+    Assert.assertEquals(25, RowCountEstimator.estimateRowCount(
+      connection, SqlDialect.GENERIC, "SELECT ID, NAME FROM ITEMS WHERE $CONDITIONS"));
+    Assert.assertEquals(10, RowCountEstimator.estimateRowCount(
+      connection, SqlDialect.GENERIC, "SELECT ID FROM ITEMS WHERE ID > 15 AND $CONDITIONS;"));
+  }
+
+  @Test
+  public void testGetNumSplits() {
+    Assert.assertEquals(1, RowCountEstimator.getNumSplits(0, 100));
+    Assert.assertEquals(1, RowCountEstimator.getNumSplits(100, 100));
+    Assert.assertEquals(2, RowCountEstimator.getNumSplits(101, 100));
+    Assert.assertEquals(RowCountEstimator.MAX_NUM_SPLITS, RowCountEstimator.getNumSplits(Long.MAX_VALUE, 1));
+  }
+
+  @Test
+  public void testGetTableName() {
+    Assert.assertEquals("ITEMS", RowCountEstimator.getTableName("SELECT ID, NAME FROM ITEMS WHERE $CONDITIONS"));
+    Assert.assertEquals("db.\"Items\"", RowCountEstimator.getTableName(
+      "select *\nfrom db.\"Items\"\nwhere $CONDITIONS"));
+    Assert.assertEquals("ITEMS", RowCountEstimator.getTableName(
+      "SELECT ID, (SELECT MAX(ID) FROM OTHERS) FROM ITEMS WHERE $CONDITIONS"));
+    Assert.assertNull(RowCountEstimator.getTableName("SELECT ID FROM ITEMS WHERE ID > 15 AND $CONDITIONS"));
+    Assert.assertNull(RowCountEstimator.getTableName("SELECT DISTINCT NAME FROM ITEMS WHERE $CONDITIONS"));
+    Assert.assertNull(RowCountEstimator.getTableName("SELECT * FROM ITEMS I JOIN OTHERS O WHERE $CONDITIONS"));
+    Assert.assertNull(RowCountEstimator.getTableName("SELECT * FROM ITEMS WHERE $CONDITIONS GROUP BY NAME"));
+  }
+
+  @Test
+  public void testParsePlannedRows() {
+    Assert.assertEquals(Long.valueOf(2550), RowCountEstimator.parsePlannedRows(
+      "Seq Scan on users  (cost=0.00..35.50 rows=2550 width=4)"));
+    Assert.assertNull(RowCountEstimator.parsePlannedRows("Result"));
+    Assert.assertNull(RowCountEstimator.parsePlannedRows(null));
+  }
+}